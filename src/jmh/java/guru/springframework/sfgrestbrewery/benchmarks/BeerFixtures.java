@@ -0,0 +1,75 @@
+package guru.springframework.sfgrestbrewery.benchmarks;
+
+import guru.springframework.sfgrestbrewery.SfgReactiveBreweryApplication;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Shared test data and application bootstrap for the benchmarks.
+ */
+final class BeerFixtures {
+
+    private BeerFixtures() {
+    }
+
+    static Beer beer(int id) {
+        return Beer.builder()
+                .id(id)
+                .version(3L)
+                .beerName("Mango Bobs " + id)
+                .beerStyle(BeerStyleEnum.ALE)
+                .upc("06312342" + String.format("%05d", id))
+                .quantityOnHand(120)
+                .price(new BigDecimal("12.95"))
+                .createdDate(LocalDateTime.of(2021, 3, 7, 10, 15))
+                .lastModifiedDate(LocalDateTime.of(2021, 3, 8, 16, 45))
+                .build();
+    }
+
+    static BeerDto beerDto(int id) {
+        return BeerDto.builder()
+                .id(id)
+                .version(3L)
+                .beerName("Mango Bobs " + id)
+                .beerStyle(BeerStyleEnum.ALE.name())
+                .upc("06312342" + String.format("%05d", id))
+                .quantityOnHand(120)
+                .price(new BigDecimal("12.95"))
+                .createdDate(LocalDateTime.of(2021, 3, 7, 10, 15))
+                .lastUpdatedDate(LocalDateTime.of(2021, 3, 8, 16, 45))
+                .build();
+    }
+
+    /**
+     * Boots the application without a web server, on its in-memory H2 database, and waits for the beer data.
+     */
+    static ConfigurableApplicationContext startApplication() {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SfgReactiveBreweryApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("sfg.brewery.query-plan-check.enabled=false",
+                        "logging.level.guru.springframework.sfgrestbrewery=warn",
+                        "logging.level.org.springframework.data.r2dbc=warn",
+                        "logging.level.org.springframework.r2dbc=warn",
+                        "logging.level.io.r2dbc=warn",
+                        "logging.level.reactor.netty.http=warn")
+                .run();
+
+        BeerRepository beerRepository = context.getBean(BeerRepository.class);
+        Mono.defer(beerRepository::count)
+                .filter(count -> count > 0)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(50)))
+                .block(Duration.ofSeconds(30));
+
+        return context;
+    }
+}
@@ -0,0 +1,75 @@
+package guru.springframework.sfgrestbrewery.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Jackson encoding and decoding of the beer payloads, with the object mapper configured the way Boot does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeerJsonBenchmark {
+
+    @Param({"25", "100"})
+    int pageSize;
+
+    ObjectMapper objectMapper;
+    BeerDto beerDto;
+    BeerPagedList page;
+    byte[] beerDtoJson;
+    byte[] pageJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        beerDto = BeerFixtures.beerDto(1);
+        List<BeerDto> content = IntStream.rangeClosed(1, pageSize).mapToObj(BeerFixtures::beerDto).collect(toList());
+        page = new BeerPagedList(content, PageRequest.of(0, pageSize), 1000);
+        beerDtoJson = objectMapper.writeValueAsBytes(beerDto);
+        pageJson = objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] encodeBeerDto() throws Exception {
+        return objectMapper.writeValueAsBytes(beerDto);
+    }
+
+    @Benchmark
+    public BeerDto decodeBeerDto() throws Exception {
+        return objectMapper.readValue(beerDtoJson, BeerDto.class);
+    }
+
+    @Benchmark
+    public byte[] encodeBeerPagedList() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public BeerPagedList decodeBeerPagedList() throws Exception {
+        return objectMapper.readValue(pageJson, BeerPagedList.class);
+    }
+}
@@ -0,0 +1,88 @@
+package guru.springframework.sfgrestbrewery.benchmarks;
+
+import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Beer service hot paths against the application's in-memory H2 database. The inventory variants bypass
+ * the caches, so they measure the query path; the others measure a cache hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BeerServiceBenchmark {
+
+    ConfigurableApplicationContext context;
+    BeerService beerService;
+
+    @Setup
+    public void setUp() {
+        context = BeerFixtures.startApplication();
+        beerService = context.getBean(BeerService.class);
+        // enough stock that the hot-SKU benchmark never runs out
+        beerService.adjustInventory(1, 1_000_000).block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BeerPagedList listBeersCached() {
+        return beerService.listBeers(null, null, PageRequest.of(0, 25), false).block();
+    }
+
+    @Benchmark
+    public BeerPagedList listBeersQuery() {
+        return beerService.listBeers(null, null, PageRequest.of(0, 25), true).block();
+    }
+
+    @Benchmark
+    public BeerPagedList listBeersByStyleQuery() {
+        return beerService.listBeers(null, BeerStyleEnum.IPA, PageRequest.of(0, 25), true).block();
+    }
+
+    @Benchmark
+    public BeerDto getByIdCached() {
+        return beerService.getById(1, false).block();
+    }
+
+    @Benchmark
+    public BeerDto getByIdQuery() {
+        return beerService.getById(1, true).block();
+    }
+
+    /**
+     * Per-SKU reservation throughput: every thread reserves and releases the same beer.
+     */
+    @Benchmark
+    @Threads(8)
+    public BeerReservation reserveAndReleaseHotSku() {
+        BeerReservation reservation = beerService.reserve(1, 1).block();
+        beerService.release(reservation.getId()).block();
+        return reservation;
+    }
+}
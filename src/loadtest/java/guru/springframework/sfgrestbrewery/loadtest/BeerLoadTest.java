@@ -0,0 +1,234 @@
+package guru.springframework.sfgrestbrewery.loadtest;
+
+import guru.springframework.sfgrestbrewery.web.functional.BeerRouterConfig;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupRequest;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Open-model HTTP load generator for a locally started brewery. Requests are issued at a fixed arrival rate
+ * regardless of how fast responses come back, drawn from a seeded mix of reads and writes, and the latency
+ * percentiles per operation are printed at the end. With {@code api=both} the annotated v1 endpoints and the
+ * functional v2 endpoints are driven one after the other with the same rate, seed and mix: only the
+ * operations both APIs have, lookups by id and UPC and updates, so the two runs are compared operation
+ * by operation. A single API's run also mixes in its own paged list (v1) or batch lookup (v2).
+ *
+ * Arguments ({@code key=value}): baseUrl, rate (requests/s), duration, warmup, api (v1, v2, both),
+ * writeRatio, connections, seed.
+ */
+public class BeerLoadTest {
+
+    private static final int LOOKUP_SIZE = 10;
+
+    private final LoadTestOptions options;
+    private final WebClient webClient;
+    private final List<BeerDto> catalog;
+    private final boolean sharedOperationsOnly;
+
+    BeerLoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.sharedOperationsOnly = options.getApi().equals("both");
+        ConnectionProvider connections = ConnectionProvider.builder("load-test")
+                .maxConnections(options.getConnections())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(options.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+        this.catalog = webClient.get().uri("/api/v1/beer?pageSize=1000")
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve().bodyToMono(BeerPagedList.class)
+                .map(BeerPagedList::getContent)
+                .block(Duration.ofSeconds(10));
+        if (catalog == null || catalog.isEmpty()) {
+            throw new IllegalStateException("No beers at " + options.getBaseUrl());
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        BeerLoadTest loadTest = new BeerLoadTest(options);
+        System.out.printf("Driving %s at %d req/s for %s (warmup %s, %.0f%% writes, seed %d) against %d beers%n",
+                options.getBaseUrl(), options.getRate(), options.getDuration(), options.getWarmup(),
+                options.getWriteRatio() * 100, options.getSeed(), loadTest.catalog.size());
+
+        List<LatencyReport> reports = new ArrayList<>();
+        if (!options.getApi().equals("v2")) {
+            reports.add(loadTest.run("v1 BeerController"));
+        }
+        if (!options.getApi().equals("v1")) {
+            reports.add(loadTest.run("v2 BeerHandlerV2"));
+        }
+
+        if (reports.size() == 2) {
+            printComparison(reports.get(0), reports.get(1));
+        }
+        if (reports.stream().anyMatch(report -> report.totalErrors() > 0)) {
+            System.exit(1);
+        }
+    }
+
+    LatencyReport run(String name) {
+        boolean v1 = name.startsWith("v1");
+        drive(v1, options.getWarmup(), new LatencyReport(name + " warmup"));
+
+        LatencyReport report = new LatencyReport(name);
+        long started = System.nanoTime();
+        drive(v1, options.getDuration(), report);
+        report.print(Duration.ofNanos(System.nanoTime() - started));
+        return report;
+    }
+
+    private void drive(boolean v1, Duration duration, LatencyReport report) {
+        long intervalNanos = 1_000_000_000L / options.getRate();
+        long total = duration.toMillis() * options.getRate() / 1000;
+        if (total == 0) {
+            return;
+        }
+
+        Random random = new Random(options.getSeed());
+        AtomicLong issued = new AtomicLong();
+        long start = System.nanoTime();
+
+        // the clock, not the tick count, decides how many requests are due, so late ticks catch up
+        Flux.interval(Duration.ofMillis(1))
+                .onBackpressureDrop()
+                .concatMapIterable(tick -> {
+                    long due = Math.min(total, (System.nanoTime() - start) / intervalNanos + 1);
+                    List<ScheduledRequest> requests = new ArrayList<>();
+                    for (long index = issued.get(); index < due; index++) {
+                        requests.add(new ScheduledRequest(start + index * intervalNanos, v1 ? nextV1(random) : nextV2(random)));
+                    }
+                    issued.set(due);
+                    return requests;
+                })
+                .take(total)
+                .flatMap(request -> execute(request, report), Integer.MAX_VALUE)
+                .then()
+                .block();
+    }
+
+    private Mono<Void> execute(ScheduledRequest request, LatencyReport report) {
+        Operation operation = request.getOperation();
+        return Mono.defer(operation.getCall())
+                .map(status -> status.is2xxSuccessful() || status == HttpStatus.NOT_MODIFIED)
+                .onErrorReturn(false)
+                .doOnNext(success -> report.record(operation.getName(), System.nanoTime() - request.getScheduledAt(), success))
+                .then();
+    }
+
+    private Operation nextV1(Random random) {
+        BeerDto beer = catalog.get(random.nextInt(catalog.size()));
+        if (random.nextDouble() < options.getWriteRatio()) {
+            return new Operation("PUT /api/v1/beer/{id}", () -> put("/api/v1/beer/" + beer.getId(), beer, random.nextInt(2000)));
+        }
+
+        double read = random.nextDouble();
+        if (read < 0.25 && !sharedOperationsOnly) {
+            int page = random.nextInt(Math.max(1, catalog.size() / 25));
+            return new Operation("GET /api/v1/beer", () -> get("/api/v1/beer?pageSize=25&pageNumber=" + page));
+        } else if (read < 0.70) {
+            return new Operation("GET /api/v1/beer/{id}", () -> get("/api/v1/beer/" + beer.getId()));
+        }
+        return new Operation("GET /api/v1/beerUpc/{upc}", () -> get("/api/v1/beerUpc/" + beer.getUpc()));
+    }
+
+    private Operation nextV2(Random random) {
+        BeerDto beer = catalog.get(random.nextInt(catalog.size()));
+        String beerPath = "/" + BeerRouterConfig.BEER_V2_PATH;
+        if (random.nextDouble() < options.getWriteRatio()) {
+            return new Operation("PUT /api/v2/beer/{id}", () -> put(beerPath + "/" + beer.getId(), beer, random.nextInt(2000)));
+        }
+
+        double read = random.nextDouble();
+        if (read < 0.25 && !sharedOperationsOnly) {
+            List<Integer> ids = random.ints(LOOKUP_SIZE, 0, catalog.size())
+                    .mapToObj(index -> catalog.get(index).getId())
+                    .collect(toList());
+            return new Operation("POST /api/v2/beer/lookup", () -> webClient.post().uri(beerPath + "/lookup")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .bodyValue(BeerLookupRequest.builder().ids(ids).build())
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode())));
+        } else if (read < 0.70) {
+            return new Operation("GET /api/v2/beer/{id}", () -> get(beerPath + "/" + beer.getId()));
+        }
+        return new Operation("GET /api/v2/beerUpc/{upc}", () -> get("/" + BeerRouterConfig.BEER_UPC_V2_PATH + "/" + beer.getUpc()));
+    }
+
+    private Mono<HttpStatus> get(String uri) {
+        return webClient.get().uri(uri)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
+    private Mono<HttpStatus> put(String uri, BeerDto beer, int priceCents) {
+        // same name, style and UPC, new price: never conflicts with the unique UPC index
+        BeerDto update = BeerDto.builder()
+                .beerName(beer.getBeerName())
+                .beerStyle(beer.getBeerStyle())
+                .upc(beer.getUpc())
+                .price(BigDecimal.valueOf(priceCents, 2))
+                .build();
+
+        return webClient.put().uri(uri)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(update)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
+    /**
+     * Compares each operation the two runs share; the runs' totals are not compared.
+     */
+    private static void printComparison(LatencyReport v1, LatencyReport v2) {
+        System.out.printf("%n== v1 vs v2 (ms) ==%n%-24s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "v1 p50", "v2 p50", "v2/v1", "v1 p99", "v2 p99", "v2/v1");
+        for (String operation : v1.operations()) {
+            String v2Operation = operation.replace("/api/v1/", "/api/v2/");
+            if (!v2.operations().contains(v2Operation)) {
+                continue;
+            }
+            Histogram first = v1.latency(operation);
+            Histogram second = v2.latency(v2Operation);
+            System.out.printf("%-24s", operation.replace("/api/v1/", "/api/*/"));
+            for (double percentile : new double[]{50, 99}) {
+                double a = first.getValueAtPercentile(percentile) / 1000.0;
+                double b = second.getValueAtPercentile(percentile) / 1000.0;
+                System.out.printf(" %9.2f %9.2f %9.2f", a, b, a > 0 ? b / a : 0);
+            }
+            System.out.println();
+        }
+    }
+
+    @Value
+    private static class Operation {
+        String name;
+        Supplier<Mono<HttpStatus>> call;
+    }
+
+    @Value
+    private static class ScheduledRequest {
+        long scheduledAt;
+        Operation operation;
+    }
+}
@@ -0,0 +1,85 @@
+package guru.springframework.sfgrestbrewery.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and error counts per operation of one run. Latencies are in microseconds and measured
+ * from each request's scheduled start, so a stalled server shows up in the tail instead of slowing the load.
+ */
+class LatencyReport {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String name;
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    LatencyReport(String name) {
+        this.name = name;
+    }
+
+    void record(String operation, long latencyNanos, boolean success) {
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS);
+        latencies.computeIfAbsent(operation, key -> new ConcurrentHistogram(MAX_LATENCY_MICROS, 3)).recordValue(micros);
+        if (!success) {
+            errors.computeIfAbsent(operation, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * @return the operations recorded, in name order
+     */
+    Set<String> operations() {
+        return new TreeMap<>(latencies).keySet();
+    }
+
+    Histogram latency(String operation) {
+        return latencies.get(operation);
+    }
+
+    Histogram total() {
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        latencies.values().forEach(total::add);
+        return total;
+    }
+
+    long totalErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    void print(Duration elapsed) {
+        System.out.printf("%n== %s (%.1fs) ==%n", name, elapsed.toMillis() / 1000.0);
+        System.out.printf("%-24s %9s %9s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        new TreeMap<>(latencies).forEach((operation, histogram) ->
+                printRow(operation, histogram, errors.containsKey(operation) ? errors.get(operation).sum() : 0, elapsed));
+        printRow("TOTAL", total(), totalErrors(), elapsed);
+    }
+
+    private static void printRow(String operation, Histogram histogram, long errorCount, Duration elapsed) {
+        long count = histogram.getTotalCount();
+        System.out.printf("%-24s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation,
+                count,
+                count / (elapsed.toMillis() / 1000.0),
+                count > 0 ? 100.0 * errorCount / count : 0.0,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,50 @@
+package guru.springframework.sfgrestbrewery.loadtest;
+
+import lombok.Value;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load test settings, given as {@code key=value} arguments.
+ */
+@Value
+class LoadTestOptions {
+
+    String baseUrl;
+    int rate;
+    Duration duration;
+    Duration warmup;
+    String api;
+    double writeRatio;
+    int connections;
+    long seed;
+
+    static LoadTestOptions parse(String... args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            values.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        String api = values.getOrDefault("api", "both");
+        if (!api.equals("v1") && !api.equals("v2") && !api.equals("both")) {
+            throw new IllegalArgumentException("api must be v1, v2 or both");
+        }
+
+        return new LoadTestOptions(
+                values.getOrDefault("baseUrl", "http://localhost:8080"),
+                Integer.parseInt(values.getOrDefault("rate", "200")),
+                DurationStyle.detectAndParse(values.getOrDefault("duration", "30s")),
+                DurationStyle.detectAndParse(values.getOrDefault("warmup", "5s")),
+                api,
+                Double.parseDouble(values.getOrDefault("writeRatio", "0.05")),
+                Integer.parseInt(values.getOrDefault("connections", "500")),
+                Long.parseLong(values.getOrDefault("seed", "42")));
+    }
+}
@@ -2,11 +2,13 @@ package guru.springframework.sfgrestbrewery.bootstrap;
 
 import guru.springframework.sfgrestbrewery.domain.Beer;
 import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.services.BeerShards;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -54,20 +56,29 @@ public class BeerLoader implements CommandLineRunner {
 
 
     private final BeerRepository beerRepository;
+    private final BeerShards beerShards;
 
     @Override
     public void run(String... args) throws Exception {
         loadBeerObjects();
     }
 
+    private Mono<Long> count() {
+        return beerShards.isEnabled() ? beerShards.countAll() : beerRepository.count();
+    }
+
+    private Mono<Beer> save(Beer beer) {
+        return beerShards.isEnabled() ? beerShards.insert(beer) : beerRepository.save(beer);
+    }
+
     private synchronized void loadBeerObjects() {
-        log.debug("Loading initial data. Count is: {}", beerRepository.count().block() );
+        log.debug("Loading initial data. Count is: {}", count().block() );
 
-        if (beerRepository.count().block() == 0) {
+        if (count().block() == 0) {
 
             Random random = new Random();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Mango Bobs")
                     .beerStyle(BeerStyleEnum.ALE)
                     .upc(BEER_1_UPC)
@@ -77,7 +88,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Galaxy Cat")
                     .beerStyle(BeerStyleEnum.PALE_ALE)
                     .upc(BEER_2_UPC)
@@ -87,7 +98,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("No Hammers On The Bar")
                     .beerStyle(BeerStyleEnum.WHEAT)
                     .upc(BEER_3_UPC)
@@ -97,7 +108,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Blessed")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_4_UPC)
@@ -107,7 +118,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Adjunct Trail")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_5_UPC)
@@ -117,7 +128,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Very GGGreenn")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_6_UPC)
@@ -127,7 +138,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Double Barrel Hunahpu's")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_7_UPC)
@@ -137,7 +148,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Very Hazy")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_8_UPC)
@@ -147,7 +158,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("SR-71")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_9_UPC)
@@ -157,7 +168,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Pliny the Younger")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_10_UPC)
@@ -167,7 +178,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Blessed")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_11_UPC)
@@ -177,7 +188,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("King Krush")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_12_UPC)
@@ -187,7 +198,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("PBS Porter")
                     .beerStyle(BeerStyleEnum.PORTER)
                     .upc(BEER_13_UPC)
@@ -197,7 +208,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Pinball Porter")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_14_UPC)
@@ -207,7 +218,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Golden Budda")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_15_UPC)
@@ -217,7 +228,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Grand Central Red")
                     .beerStyle(BeerStyleEnum.LAGER)
                     .upc(BEER_16_UPC)
@@ -227,7 +238,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Pac-Man")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_17_UPC)
@@ -237,7 +248,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Ro Sham Bo")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_18_UPC)
@@ -247,7 +258,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Summer Wheatly")
                     .beerStyle(BeerStyleEnum.WHEAT)
                     .upc(BEER_19_UPC)
@@ -257,7 +268,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Java Jill")
                     .beerStyle(BeerStyleEnum.LAGER)
                     .upc(BEER_20_UPC)
@@ -267,7 +278,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Bike Trail Pale")
                     .beerStyle(BeerStyleEnum.PALE_ALE)
                     .upc(BEER_21_UPC)
@@ -277,7 +288,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("N.Z.P")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_22_UPC)
@@ -287,7 +298,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Stawberry Blond")
                     .beerStyle(BeerStyleEnum.WHEAT)
                     .upc(BEER_23_UPC)
@@ -297,7 +308,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Loco")
                     .beerStyle(BeerStyleEnum.PORTER)
                     .upc(BEER_24_UPC)
@@ -307,7 +318,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Spocktoberfest")
                     .beerStyle(BeerStyleEnum.STOUT)
                     .upc(BEER_25_UPC)
@@ -317,7 +328,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Beach Blond Ale")
                     .beerStyle(BeerStyleEnum.ALE)
                     .upc(BEER_26_UPC)
@@ -327,7 +338,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Bimini Twist IPA")
                     .beerStyle(BeerStyleEnum.IPA)
                     .upc(BEER_27_UPC)
@@ -337,7 +348,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Rod Bender Red Ale")
                     .beerStyle(BeerStyleEnum.ALE)
                     .upc(BEER_28_UPC)
@@ -347,7 +358,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("Floating Dock")
                     .beerStyle(BeerStyleEnum.SAISON)
                     .upc(BEER_29_UPC)
@@ -357,7 +368,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            beerRepository.save(Beer.builder()
+            save(Beer.builder()
                     .beerName("El Hefe")
                     .beerStyle(BeerStyleEnum.WHEAT)
                     .upc(BEER_30_UPC)
@@ -367,7 +378,7 @@ public class BeerLoader implements CommandLineRunner {
                     .lastModifiedDate(LocalDateTime.now())
                     .build()).block();
 
-            log.debug("Beer Records loaded: {}", beerRepository.count().block());
+            log.debug("Beer Records loaded: {}", count().block());
         }
     }
 }
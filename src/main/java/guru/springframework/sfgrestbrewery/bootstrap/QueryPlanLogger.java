@@ -0,0 +1,63 @@
+package guru.springframework.sfgrestbrewery.bootstrap;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Logs the execution plan of each beer access path at startup, so a missing index shows up in the boot log
+ * rather than at the first traffic spike. Disable with {@code sfg.brewery.query-plan-check.enabled=false}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "sfg.brewery.query-plan-check.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryPlanLogger {
+
+    private static final Map<String, String> ACCESS_PATHS = new LinkedHashMap<>();
+
+    static {
+        ACCESS_PATHS.put("findById", "SELECT * FROM beer WHERE id = 1");
+        ACCESS_PATHS.put("findByUpc", "SELECT * FROM beer WHERE upc = '" + BeerLoader.BEER_1_UPC + "'");
+        ACCESS_PATHS.put("listBeers by name", "SELECT * FROM beer WHERE beer_name = 'Galaxy Cat' LIMIT 25");
+        ACCESS_PATHS.put("listBeers by style", "SELECT * FROM beer WHERE beer_style = 'IPA' LIMIT 25");
+        ACCESS_PATHS.put("listBeers by name and style",
+                "SELECT * FROM beer WHERE beer_name = 'Galaxy Cat' AND beer_style = 'PALE_ALE' LIMIT 25");
+        ACCESS_PATHS.put("count by style", "SELECT COUNT(*) FROM beer WHERE beer_style = 'IPA'");
+        ACCESS_PATHS.put("listBeersAfter", "SELECT * FROM beer WHERE id > 0 ORDER BY id LIMIT 26");
+        ACCESS_PATHS.put("listBeersAfter by style",
+                "SELECT * FROM beer WHERE id > 0 AND beer_style = 'IPA' ORDER BY id LIMIT 26");
+    }
+
+    private final DatabaseClient databaseClient;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void logQueryPlans() {
+        Flux.fromIterable(ACCESS_PATHS.entrySet())
+                .concatMap(accessPath -> databaseClient.sql("EXPLAIN " + accessPath.getValue())
+                        .map((row, metadata) -> row.get(0, String.class))
+                        .all()
+                        .collect(joining(" "))
+                        .doOnNext(plan -> logPlan(accessPath.getKey(), plan)))
+                .subscribe(plan -> {}, throwable -> log.warn("Could not check query plans", throwable));
+    }
+
+    private void logPlan(String accessPath, String plan) {
+        // H2 marks a full scan as "tableScan" in its plan comments
+        if (plan.contains("tableScan")) {
+            log.warn("Query plan for {} scans the whole beer table, check the indexes in schema.sql: {}", accessPath, plan);
+        } else {
+            log.info("Query plan for {}: {}", accessPath, plan);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The beer lookup caches used by the beer service, and their write-through invalidation.
+ */
+@Slf4j
+@Getter
+@Component
+public class BeerCaches implements MeterBinder {
+
+    private final ReactiveCache<Integer, BeerDto> beerCache;
+    private final ReactiveCache<String, BeerDto> beerUpcCache;
+    private final ReactiveCache<BeerListCacheKey, BeerPagedList> beerListCache;
+    private final ReactiveCache<BeerCountCacheKey, Long> beerCountCache;
+    @Getter(AccessLevel.NONE)
+    private final List<BeerEvictionListener> listeners = new CopyOnWriteArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong writes = new AtomicLong();
+
+    public BeerCaches(@Value("${sfg.brewery.cache.beer.max-size:10000}") long beerMaxSize,
+                      @Value("${sfg.brewery.cache.beer.ttl:10m}") Duration beerTtl,
+                      @Value("${sfg.brewery.cache.beer-list.max-size:1000}") long beerListMaxSize,
+                      @Value("${sfg.brewery.cache.beer-list.ttl:1m}") Duration beerListTtl,
+                      @Value("${sfg.brewery.cache.beer-count.max-size:1000}") long beerCountMaxSize,
+                      @Value("${sfg.brewery.cache.beer-count.ttl:10s}") Duration beerCountTtl) {
+        this.beerCache = new ReactiveCache<>("beerCache", beerMaxSize, beerTtl);
+        this.beerUpcCache = new ReactiveCache<>("beerUpcCache", beerMaxSize, beerTtl);
+        this.beerListCache = new ReactiveCache<>("beerListCache", beerListMaxSize, beerListTtl);
+        this.beerCountCache = new ReactiveCache<>("beerCountCache", beerCountMaxSize, beerCountTtl);
+    }
+
+    public void addEvictionListener(BeerEvictionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the write generation, to be taken before reading rows that are later passed to {@link #putLoaded}
+     */
+    public long generation() {
+        return writes.get();
+    }
+
+    /**
+     * Caches a beer read from the table by id and UPC, unless a write has evicted anything since
+     * {@code generation}, as the row may predate it. The generation is checked again after the put,
+     * since an eviction can land between the first check and the put.
+     */
+    public void putLoaded(long generation, BeerDto beer) {
+        if (writes.get() != generation) {
+            return;
+        }
+        beerCache.put(beer.getId(), beer);
+        if (beer.getUpc() != null) {
+            beerUpcCache.put(beer.getUpc(), beer);
+        }
+        if (writes.get() != generation) {
+            beerCache.evict(beer.getId());
+            if (beer.getUpc() != null) {
+                beerUpcCache.evict(beer.getUpc());
+            }
+        }
+    }
+
+    /**
+     * Evicts everything a write could have made stale. Pass every known state of the beer,
+     * e.g. before and after an update, so both the old and new UPC and filters are covered.
+     */
+    public void evict(BeerDto... states) {
+        writes.incrementAndGet();
+        for (BeerDto beer : states) {
+            if (beer == null) {
+                continue;
+            }
+            if (beer.getId() != null) {
+                beerCache.evict(beer.getId());
+            }
+            if (beer.getUpc() != null) {
+                beerUpcCache.evict(beer.getUpc());
+            }
+            listeners.forEach(listener -> listener.evicted(beer.getId(), beer.getUpc()));
+        }
+
+        // offset paging shifts every page of a matching filter, not just the page holding the beer
+        beerListCache.invalidateIf(key -> Arrays.stream(states)
+                .filter(Objects::nonNull)
+                .anyMatch(beer -> matches(key.getBeerName(), key.getBeerStyle(), beer)));
+        beerCountCache.invalidateIf(key -> Arrays.stream(states)
+                .filter(Objects::nonNull)
+                .anyMatch(beer -> matches(key.getBeerName(), key.getBeerStyle(), beer)));
+
+        log.debug("Evicted cached beer lookups for {} state(s)", states.length);
+    }
+
+    /**
+     * Evicts after a write that did not read the row first. The previous state is taken from
+     * {@code beerCache} when it is there; otherwise every list page and count is dropped, since any of
+     * them could have held the beer.
+     *
+     * @param changes the written fields, null for a delete
+     */
+    public void evictById(Integer beerId, BeerDto changes) {
+        writes.incrementAndGet();
+        BeerDto previous = beerCache.getIfPresent(beerId);
+        if (previous != null) {
+            evict(previous, merge(previous, changes));
+            return;
+        }
+
+        beerCache.evict(beerId);
+        beerUpcCache.invalidateIfValue(beer -> beerId.equals(beer.getId()));
+        if (changes != null && changes.getUpc() != null) {
+            beerUpcCache.evict(changes.getUpc());
+        }
+        listeners.forEach(listener -> listener.evicted(beerId, null));
+        beerListCache.invalidateAll();
+        beerCountCache.invalidateAll();
+    }
+
+    private static BeerDto merge(BeerDto previous, BeerDto changes) {
+        if (changes == null) {
+            return null;
+        }
+
+        return BeerDto.builder()
+                .id(previous.getId())
+                .beerName(changes.getBeerName() != null ? changes.getBeerName() : previous.getBeerName())
+                .beerStyle(changes.getBeerStyle() != null ? changes.getBeerStyle() : previous.getBeerStyle())
+                .upc(changes.getUpc() != null ? changes.getUpc() : previous.getUpc())
+                .build();
+    }
+
+    private boolean matches(String beerName, BeerStyleEnum beerStyle, BeerDto beer) {
+        return (!StringUtils.hasLength(beerName) || beerName.equals(beer.getBeerName()))
+                && (beerStyle == null || beerStyle.name().equals(beer.getBeerStyle()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        beerCache.bindTo(registry);
+        beerUpcCache.bindTo(registry);
+        beerListCache.bindTo(registry);
+        beerCountCache.bindTo(registry);
+    }
+}
@@ -0,0 +1,13 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import lombok.Value;
+
+/**
+ * Key of one cached beer count, i.e. the name/style filter of a {@code listBeers} query.
+ */
+@Value(staticConstructor = "of")
+public class BeerCountCacheKey {
+    String beerName;
+    BeerStyleEnum beerStyle;
+}
@@ -0,0 +1,13 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+/**
+ * Told about every beer a write evicted, so caches kept outside {@link BeerCaches} can follow along.
+ */
+@FunctionalInterface
+public interface BeerEvictionListener {
+
+    /**
+     * @param upc the beer's UPC, or null when it is not known and any UPC may be stale
+     */
+    void evicted(Integer beerId, String upc);
+}
@@ -0,0 +1,20 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import lombok.Value;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * Key of one cached {@code listBeers} page.
+ */
+@Value
+public class BeerListCacheKey {
+    String beerName;
+    BeerStyleEnum beerStyle;
+    int pageNumber;
+    int pageSize;
+
+    public static BeerListCacheKey of(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest) {
+        return new BeerListCacheKey(beerName, beerStyle, pageRequest.getPageNumber(), pageRequest.getPageSize());
+    }
+}
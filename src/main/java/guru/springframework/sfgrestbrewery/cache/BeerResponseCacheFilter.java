@@ -0,0 +1,208 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the encoded JSON of beer reads, keyed by path and query, so a hit is written to the connection as
+ * one wrapped byte array without mapping or encoding. Covers lookups by id and UPC (v1 and v2) and the v1
+ * list. Requests carrying {@code showInventoryOnHand} are never cached, whatever its value, so every
+ * spelling the controller accepts as true is covered.
+ *
+ * Writes invalidate through {@link BeerEvictionListener}: the beer's id and UPC entries and every list entry.
+ * A response that was being produced while a write happened is not stored. Enable with
+ * {@code sfg.brewery.response-cache.enabled=true}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "sfg.brewery.response-cache.enabled", havingValue = "true")
+public class BeerResponseCacheFilter implements WebFilter, MeterBinder {
+
+    private static final String BEER_LIST_PATH = "/api/v1/beer";
+    private static final Pattern BEER_BY_ID_PATH = Pattern.compile("/api/v[12]/beer/(\\d+)");
+    private static final Pattern BEER_BY_UPC_PATH = Pattern.compile("/api/v[12]/beerUpc/([^/]+)");
+
+    private final Cache<ResponseKey, CachedResponse> responses;
+    private final long maxEntryBytes;
+    private final AtomicLong generation = new AtomicLong();
+
+    public BeerResponseCacheFilter(BeerCaches beerCaches,
+                                   @Value("${sfg.brewery.response-cache.max-size:64MB}") DataSize maxSize,
+                                   @Value("${sfg.brewery.response-cache.max-entry-size:256KB}") DataSize maxEntrySize,
+                                   @Value("${sfg.brewery.response-cache.ttl:1m}") Duration timeToLive) {
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((ResponseKey key, CachedResponse response) -> response.getBody().length)
+                .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .build();
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        beerCaches.addEvictionListener(this::evicted);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ResponseKey key = keyOf(exchange.getRequest());
+        if (key == null) {
+            return chain.filter(exchange);
+        }
+
+        CachedResponse cached = responses.getIfPresent(key);
+        if (cached != null) {
+            return write(exchange, cached);
+        }
+
+        long startGeneration = generation.get();
+        return chain.filter(exchange.mutate()
+                .response(new CapturingResponse(exchange.getResponse(), key, startGeneration))
+                .build());
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        String eTag = cached.getHeaders().getETag();
+        long lastModified = cached.getHeaders().getLastModified();
+        if (exchange.checkNotModified(eTag, Instant.ofEpochMilli(lastModified))) {
+            return response.setComplete();
+        }
+
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().putAll(cached.getHeaders());
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    private static ResponseKey keyOf(ServerHttpRequest request) {
+        if (request.getMethod() != HttpMethod.GET
+                || request.getQueryParams().containsKey("showInventoryOnHand")) {
+            return null;
+        }
+
+        String path = request.getPath().pathWithinApplication().value();
+        String uri = request.getURI().getRawQuery() != null ? path + "?" + request.getURI().getRawQuery() : path;
+        if (BEER_LIST_PATH.equals(path)) {
+            return new ResponseKey(uri, null, null);
+        }
+        Matcher byId = BEER_BY_ID_PATH.matcher(path);
+        if (byId.matches()) {
+            return new ResponseKey(uri, Integer.valueOf(byId.group(1)), null);
+        }
+        Matcher byUpc = BEER_BY_UPC_PATH.matcher(path);
+        if (byUpc.matches()) {
+            return new ResponseKey(uri, null, byUpc.group(1));
+        }
+        return null;
+    }
+
+    private void evicted(Integer beerId, String upc) {
+        generation.incrementAndGet();
+        responses.asMap().keySet().removeIf(key -> key.isList()
+                || (key.getBeerId() != null && key.getBeerId().equals(beerId))
+                || (key.getUpc() != null && (upc == null || key.getUpc().equals(upc))));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, responses, "beerResponseCache");
+    }
+
+    /**
+     * Passes the body through while keeping a copy of a successful JSON response.
+     */
+    private class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final ResponseKey key;
+        private final long startGeneration;
+
+        CapturingResponse(ServerHttpResponse delegate, ResponseKey key, long startGeneration) {
+            super(delegate);
+            this.key = key;
+            this.startGeneration = startGeneration;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatus status = getStatusCode();
+            if (status != null && status != HttpStatus.OK) {
+                return super.writeWith(body);
+            }
+
+            return super.writeWith(DataBufferUtils.join(Flux.from(body))
+                    .doOnNext(joined -> {
+                        if (joined.readableByteCount() <= maxEntryBytes) {
+                            store(joined);
+                        }
+                    }));
+        }
+
+        private void store(DataBuffer joined) {
+            byte[] bytes = new byte[joined.readableByteCount()];
+            joined.read(bytes);
+            joined.readPosition(0);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(getHeaders().getContentType());
+            if (getHeaders().getETag() != null) {
+                headers.setETag(getHeaders().getETag());
+            }
+            if (getHeaders().getLastModified() > 0) {
+                headers.setLastModified(getHeaders().getLastModified());
+            }
+
+            // a write since this response started may have made it stale. An eviction can also land between
+            // the check and the put, after its removeIf has passed the key, so the check is repeated after it
+            if (generation.get() == startGeneration) {
+                CachedResponse response = new CachedResponse(bytes, headers);
+                responses.put(key, response);
+                if (generation.get() != startGeneration) {
+                    responses.asMap().remove(key, response);
+                }
+            }
+        }
+    }
+
+    @lombok.Value
+    private static class ResponseKey {
+        String uri;
+        Integer beerId;
+        String upc;
+
+        boolean isList() {
+            return beerId == null && upc == null;
+        }
+    }
+
+    @lombok.Value
+    private static class CachedResponse {
+        byte[] body;
+        HttpHeaders headers;
+    }
+}
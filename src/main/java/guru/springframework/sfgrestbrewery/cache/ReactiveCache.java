@@ -0,0 +1,104 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Read-through cache for reactive lookups.
+ *
+ * Unlike Spring's {@code @Cacheable}, which would store the cold {@link Mono} itself, this stores the
+ * resolved value. Concurrent callers for the same key share a single in-flight load, and an empty
+ * or failed load is not cached.
+ *
+ * Binds the usual {@code cache.*} meters plus a {@code cache.invalidations} counter for explicit evictions.
+ */
+public class ReactiveCache<K, V> implements MeterBinder {
+
+    private final String name;
+    private final AsyncCache<K, V> cache;
+    private final LongAdder invalidations = new LongAdder();
+
+    public ReactiveCache(String name, long maximumSize, Duration timeToLive) {
+        this.name = name;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        // each subscriber gets its own copy, so a cancelled caller does not cancel the shared load
+        return Mono.defer(() -> Mono.fromFuture(cache.get(key, (k, executor) -> loader.apply(k).toFuture()).copy()));
+    }
+
+    /**
+     * @return the cached value if it is already resolved, without waiting on an in-flight load
+     */
+    public V getIfPresent(K key) {
+        CompletableFuture<V> future = cache.getIfPresent(key);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.getNow(null);
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, CompletableFuture.completedFuture(value));
+    }
+
+    public void evict(K key) {
+        cache.synchronous().invalidate(key);
+        invalidations.increment();
+    }
+
+    public void invalidateIf(Predicate<K> keyPredicate) {
+        cache.synchronous().asMap().keySet().removeIf(key -> {
+            if (keyPredicate.test(key)) {
+                invalidations.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public void invalidateIfValue(Predicate<V> valuePredicate) {
+        cache.synchronous().asMap().values().removeIf(value -> {
+            if (valuePredicate.test(value)) {
+                invalidations.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public void invalidateAll() {
+        invalidations.add(cache.synchronous().estimatedSize());
+        cache.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), name);
+        FunctionCounter.builder("cache.invalidations", invalidations, LongAdder::sum)
+                .tag("cache", name)
+                .description("The number of entries removed because the underlying data changed")
+                .register(registry);
+    }
+}
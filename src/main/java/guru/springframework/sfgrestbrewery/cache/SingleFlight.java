@@ -0,0 +1,80 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, further subscribers for that key
+ * join it instead of issuing their own. Nothing is kept once the call terminates, and at most
+ * {@code maxInFlight} keys are tracked; beyond that calls are issued uncoalesced.
+ */
+public class SingleFlight<K, V> implements MeterBinder {
+
+    private final String name;
+    private final int maxInFlight;
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name, int maxInFlight) {
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Mono<V> execute(K key, Function<K, Mono<V>> call) {
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing == null && inFlight.size() >= maxInFlight) {
+                issued.increment();
+                return call.apply(key);
+            }
+
+            if (existing == null) {
+                Mono<V> candidate = share(key, call);
+                existing = inFlight.putIfAbsent(key, candidate);
+                if (existing == null) {
+                    issued.increment();
+                    return candidate;
+                }
+            }
+
+            coalesced.increment();
+            return existing;
+        });
+    }
+
+    private Mono<V> share(K key, Function<K, Mono<V>> call) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> shared = call.apply(key)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .share();
+        self.set(shared);
+        return shared;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("single.flight.calls", issued, LongAdder::sum)
+                .tag("name", name)
+                .tag("result", "issued")
+                .description("Calls sent upstream")
+                .register(registry);
+        FunctionCounter.builder("single.flight.calls", coalesced, LongAdder::sum)
+                .tag("name", name)
+                .tag("result", "coalesced")
+                .description("Calls that joined an identical call already in flight")
+                .register(registry);
+        Gauge.builder("single.flight.in.flight", inFlight, ConcurrentMap::size)
+                .tag("name", name)
+                .register(registry);
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
@@ -29,7 +30,7 @@ public class Beer {
 //    @Column(length = 36, columnDefinition = "varchar", updatable = false, nullable = false)
     private Integer id;
 
-//    @Version
+    @Version
     private Long version;
 
     private String beerName;
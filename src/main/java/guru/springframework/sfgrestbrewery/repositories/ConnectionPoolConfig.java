@@ -0,0 +1,189 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Replaces the auto-configured connection factory with a sized, metered {@link ConnectionPool} over
+ * {@code spring.r2dbc.url}. The initial connections are opened while the context starts, so the first
+ * requests after the app reports ready do not pay for connection setup.
+ *
+ * A slow query holds its connection, not an event loop, so {@code max-size} bounds concurrent statements
+ * rather than request concurrency; size it from {@code beer.db.pool.pending} and the acquire timer.
+ *
+ * With {@code sfg.brewery.r2dbc.replicas} set, each replica URL gets a pool of its own and the
+ * connection factory becomes a {@link ReplicaRoutingConnectionFactory} in front of all of them. With
+ * {@code sfg.brewery.sharding.shards} set instead, each shard URL gets a pool, the schema and the shard's
+ * id sequence, behind a {@link ShardRoutingConnectionFactory}.
+ */
+@Slf4j
+@Configuration
+public class ConnectionPoolConfig {
+
+    @Value("${sfg.brewery.r2dbc.pool.initial-size:10}")
+    int initialSize;
+
+    @Value("${sfg.brewery.r2dbc.pool.max-size:20}")
+    int maxSize;
+
+    @Value("${sfg.brewery.r2dbc.pool.acquire-timeout:2s}")
+    Duration acquireTimeout;
+
+    @Value("${sfg.brewery.r2dbc.pool.max-idle-time:30m}")
+    Duration maxIdleTime;
+
+    @Value("${sfg.brewery.r2dbc.pool.max-life-time:1h}")
+    Duration maxLifeTime;
+
+    @Value("${sfg.brewery.r2dbc.pool.warmup-timeout:30s}")
+    Duration warmupTimeout;
+
+    @Value("${sfg.brewery.r2dbc.replicas:}")
+    List<String> replicaUrls;
+
+    @Value("${sfg.brewery.r2dbc.replica-health-check.interval:5s}")
+    Duration healthCheckInterval;
+
+    @Value("${sfg.brewery.r2dbc.replica-health-check.timeout:1s}")
+    Duration healthCheckTimeout;
+
+    @Value("${sfg.brewery.sharding.shards:}")
+    List<String> shardUrls;
+
+    @Value("classpath:/schema.sql")
+    Resource schema;
+
+    private final List<MeteredConnectionPool> pools = new ArrayList<>();
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionFactory connectionFactory(R2dbcProperties properties) {
+        List<String> shards = shardUrls.stream().filter(StringUtils::hasText).map(String::trim).collect(toList());
+        if (!shards.isEmpty()) {
+            return shards(shards, properties);
+        }
+
+        if (!StringUtils.hasText(properties.getUrl())) {
+            throw new IllegalStateException("spring.r2dbc.url is required for the connection pool");
+        }
+
+        MeteredConnectionPool primary = pool("primary", properties.getUrl(), properties);
+
+        List<MeteredConnectionPool> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (StringUtils.hasText(url)) {
+                replicas.add(pool("replica-" + replicas.size(), url.trim(), properties));
+            }
+        }
+        if (replicas.isEmpty()) {
+            return primary;
+        }
+
+        log.info("Routing replica reads across {} replicas", replicas.size());
+        return new ReplicaRoutingConnectionFactory(primary, replicas, healthCheckInterval, healthCheckTimeout);
+    }
+
+    /**
+     * Binds the pools' meters. Kept apart from {@link #connectionFactory}, so the factory, and with it every
+     * repository, does not depend on the meter registry, whose binders in turn depend on repositories.
+     */
+    @Bean
+    public MeterBinder connectionPoolMetrics(ConnectionFactory connectionFactory) {
+        return registry -> pools.forEach(pool -> pool.bindTo(registry));
+    }
+
+    /**
+     * Creates the schema on startup. Declared here rather than on the application class, so web slice tests,
+     * which have no connection factory, do not pick it up.
+     */
+    @Bean
+    public ConnectionFactoryInitializer initializer(ConnectionFactory connectionFactory) {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(schema));
+
+        return initializer;
+    }
+
+    private ConnectionFactory shards(List<String> urls, R2dbcProperties properties) {
+        if (replicaUrls.stream().anyMatch(StringUtils::hasText)) {
+            throw new IllegalStateException("sfg.brewery.sharding.shards and sfg.brewery.r2dbc.replicas cannot be combined");
+        }
+
+        List<MeteredConnectionPool> shards = new ArrayList<>();
+        for (int shard = 0; shard < urls.size(); shard++) {
+            MeteredConnectionPool pool = pool("shard-" + shard, urls.get(shard), properties);
+            prepareShard(pool, shard, urls.size());
+            shards.add(pool);
+        }
+
+        log.info("Sharding beers across {} databases", shards.size());
+        return new ShardRoutingConnectionFactory(shards);
+    }
+
+    /**
+     * Creates the schema and the shard's id sequence. The sequence only yields ids that map back to this shard
+     * ({@code id % shards == shard}) and starts above any id already in the table.
+     */
+    private void prepareShard(MeteredConnectionPool pool, int shard, int shards) {
+        DatabaseClient databaseClient = DatabaseClient.create(pool);
+        Mono<Void> sequence = databaseClient.sql("SELECT COALESCE(MAX(id), 0) FROM beer")
+                .map(row -> row.get(0, Number.class).longValue())
+                .one()
+                .flatMap(maxId -> {
+                    long start = maxId + 1 + Math.floorMod(shard - (maxId + 1), (long) shards);
+                    return databaseClient.sql("CREATE SEQUENCE IF NOT EXISTS " + ShardRoutingConnectionFactory.ID_SEQUENCE
+                            + " START WITH " + start + " INCREMENT BY " + shards).then();
+                });
+
+        new ResourceDatabasePopulator(schema).populate(pool)
+                .then(sequence)
+                .block(warmupTimeout);
+    }
+
+    private MeteredConnectionPool pool(String name, String url, R2dbcProperties properties) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (StringUtils.hasText(properties.getUsername())) {
+            options.option(ConnectionFactoryOptions.USER, properties.getUsername());
+        }
+        if (StringUtils.hasText(properties.getPassword())) {
+            options.option(ConnectionFactoryOptions.PASSWORD, properties.getPassword());
+        }
+
+        ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                .name(name)
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .maxAcquireTime(acquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .build());
+        MeteredConnectionPool meteredPool = new MeteredConnectionPool(pool, name);
+        pools.add(meteredPool);
+
+        Integer opened = meteredPool.warmup().block(warmupTimeout);
+        log.info("Connection pool {} warmed up with {} connections (max {})", name, opened, maxSize);
+
+        return meteredPool;
+    }
+}
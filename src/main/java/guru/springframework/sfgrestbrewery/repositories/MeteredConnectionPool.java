@@ -0,0 +1,115 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * The application's {@link ConnectionFactory}: a {@link ConnectionPool} that times how long each caller
+ * waits for a connection ({@code beer.db.pool.acquire}, tagged by outcome) and publishes the pool's
+ * acquired, idle, allocated and pending counts as gauges. All meters are tagged with the pool's name.
+ * Acquires before the pool is bound to a registry are not timed.
+ */
+public class MeteredConnectionPool implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable, MeterBinder {
+
+    private static final String ACQUIRE_TIMER = "beer.db.pool.acquire";
+
+    private final ConnectionPool pool;
+    private final String name;
+    private volatile Timer acquired;
+    private volatile Timer failed;
+    private volatile Timer cancelled;
+
+    public MeteredConnectionPool(ConnectionPool pool, String name) {
+        this.pool = pool;
+        this.name = name;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        acquired = acquireTimer(meterRegistry, "success");
+        failed = acquireTimer(meterRegistry, "error");
+        cancelled = acquireTimer(meterRegistry, "cancelled");
+
+        gauge(meterRegistry, "beer.db.pool.acquired", "Connections handed out", PoolMetrics::acquiredSize);
+        gauge(meterRegistry, "beer.db.pool.idle", "Open connections waiting in the pool", PoolMetrics::idleSize);
+        gauge(meterRegistry, "beer.db.pool.allocated", "Open connections, acquired or idle", PoolMetrics::allocatedSize);
+        gauge(meterRegistry, "beer.db.pool.pending", "Callers waiting for a connection", PoolMetrics::pendingAcquireSize);
+        gauge(meterRegistry, "beer.db.pool.max.allocated", "Configured maximum pool size", PoolMetrics::getMaxAllocatedSize);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return pool.create().doFinally(signal -> {
+                Timer timer = timerFor(signal);
+                if (timer != null) {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        });
+    }
+
+    /**
+     * Opens the pool's initial connections.
+     *
+     * @return the number of connections opened
+     */
+    public Mono<Integer> warmup() {
+        return pool.warmup();
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return pool.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return pool;
+    }
+
+    @Override
+    public void dispose() {
+        pool.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return pool.isDisposed();
+    }
+
+    private Timer timerFor(SignalType signal) {
+        return signal == SignalType.ON_ERROR ? failed : signal == SignalType.CANCEL ? cancelled : acquired;
+    }
+
+    private Timer acquireTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(ACQUIRE_TIMER)
+                .description("Time callers wait for a pooled connection")
+                .tag("pool", name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void gauge(MeterRegistry meterRegistry, String meterName, String description, ToIntFunction<PoolMetrics> metric) {
+        Gauge.builder(meterName, pool, p -> p.getMetrics().map(metric::applyAsInt).orElse(0))
+                .description(description)
+                .tag("pool", name)
+                .register(meterRegistry);
+    }
+}
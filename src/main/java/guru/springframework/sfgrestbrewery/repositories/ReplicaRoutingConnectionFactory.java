@@ -0,0 +1,120 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ValidationDepth;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes connections for queries marked with {@link #onReplica(Mono)} to the replicas, round robin over
+ * those that passed their last health check. Everything else, including transactions, and replica reads
+ * while no replica is healthy, goes to the primary.
+ *
+ * The mark lives in the Reactor context of the query, so it has to be applied to the repository or
+ * template call itself, not to a pipeline that merely contains it.
+ */
+@Slf4j
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements Disposable {
+
+    private static final String REPLICA_READ = ReplicaRoutingConnectionFactory.class.getName() + ".REPLICA_READ";
+
+    private final MeteredConnectionPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Disposable healthChecks;
+
+    public ReplicaRoutingConnectionFactory(MeteredConnectionPool primary, List<MeteredConnectionPool> replicaPools,
+                                           Duration healthCheckInterval, Duration healthCheckTimeout) {
+        this.primary = primary;
+        Map<Integer, MeteredConnectionPool> targets = new HashMap<>();
+        for (int i = 0; i < replicaPools.size(); i++) {
+            replicas.add(new Replica(i, replicaPools.get(i)));
+            targets.put(i, replicaPools.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        afterPropertiesSet();
+
+        this.healthChecks = Flux.interval(healthCheckInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromIterable(replicas).flatMap(replica -> replica.check(healthCheckTimeout)))
+                .subscribe();
+    }
+
+    public static <T> Mono<T> onReplica(Mono<T> query) {
+        return query.contextWrite(Context.of(REPLICA_READ, Boolean.TRUE));
+    }
+
+    public static <T> Flux<T> onReplica(Flux<T> query) {
+        return query.contextWrite(Context.of(REPLICA_READ, Boolean.TRUE));
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> context.getOrDefault(REPLICA_READ, Boolean.FALSE)
+                ? Mono.<Object>justOrEmpty(nextHealthyReplica())
+                : Mono.empty());
+    }
+
+    private Integer nextHealthyReplica() {
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+            if (replica.healthy) {
+                return replica.index;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void dispose() {
+        healthChecks.dispose();
+        replicas.forEach(replica -> replica.pool.dispose());
+        primary.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return healthChecks.isDisposed();
+    }
+
+    private static class Replica {
+
+        private final int index;
+        private final MeteredConnectionPool pool;
+        private volatile boolean healthy = true;
+
+        Replica(int index, MeteredConnectionPool pool) {
+            this.index = index;
+            this.pool = pool;
+        }
+
+        Mono<Void> check(Duration timeout) {
+            return Mono.usingWhen(pool.create(),
+                            connection -> Mono.from(connection.validate(ValidationDepth.REMOTE)),
+                            Connection::close)
+                    .timeout(timeout)
+                    .onErrorReturn(false)
+                    .doOnNext(this::update)
+                    .then();
+        }
+
+        private void update(boolean nowHealthy) {
+            if (healthy != nowHealthy) {
+                log.warn("Replica {} is now {}", index, nowHealthy ? "healthy" : "unhealthy, its reads go elsewhere");
+            }
+            healthy = nowHealthy;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes each connection to the shard named in the Reactor context by {@link #onShard(int, Mono)}.
+ * Unmarked work, such as the schema initializer and the startup query plan check, goes to shard 0.
+ */
+public class ShardRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements Disposable {
+
+    /**
+     * Each shard's sequence for the ids of beers placed on it; it only yields ids with {@code id % shards == shard}.
+     */
+    public static final String ID_SEQUENCE = "beer_shard_id_seq";
+
+    private static final String SHARD = ShardRoutingConnectionFactory.class.getName() + ".SHARD";
+
+    private final List<MeteredConnectionPool> shards;
+    private volatile boolean disposed;
+
+    public ShardRoutingConnectionFactory(List<MeteredConnectionPool> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Integer, MeteredConnectionPool> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(shards.get(0));
+        afterPropertiesSet();
+    }
+
+    public static <T> Mono<T> onShard(int shard, Mono<T> query) {
+        return query.contextWrite(Context.of(SHARD, shard));
+    }
+
+    public static <T> Flux<T> onShard(int shard, Flux<T> query) {
+        return query.contextWrite(Context.of(SHARD, shard));
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(SHARD)));
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        shards.forEach(MeteredConnectionPool::dispose);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+}
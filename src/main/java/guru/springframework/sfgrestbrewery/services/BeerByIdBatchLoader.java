@@ -0,0 +1,129 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Micro-batches by-id lookups from concurrent requests: ids requested within {@code window}, up to
+ * {@code maxBatchSize} of them, are loaded with one {@code findAllById} and the rows fanned back out
+ * to each waiting caller.
+ */
+@Slf4j
+@Component
+public class BeerByIdBatchLoader implements MeterBinder {
+
+    private final BeerRepository beerRepository;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final BeerReadRouting beerReadRouting;
+    private final BeerShards beerShards;
+    private final boolean enabled;
+    private final Disposable batching;
+    private volatile FluxSink<BatchRequest> requests;
+    // set once bound; batches loaded before that are not recorded
+    private volatile DistributionSummary batchSizes;
+
+    public BeerByIdBatchLoader(BeerRepository beerRepository, BeerQueryMetrics beerQueryMetrics,
+                               BeerReadRouting beerReadRouting, BeerShards beerShards,
+                               @Value("${sfg.brewery.batch-loader.enabled:true}") boolean enabled,
+                               @Value("${sfg.brewery.batch-loader.window:500us}") Duration window,
+                               @Value("${sfg.brewery.batch-loader.max-batch-size:64}") int maxBatchSize,
+                               @Value("${sfg.brewery.batch-loader.max-concurrent-batches:8}") int maxConcurrentBatches) {
+        this.beerRepository = beerRepository;
+        this.beerQueryMetrics = beerQueryMetrics;
+        this.beerReadRouting = beerReadRouting;
+        this.beerShards = beerShards;
+        this.enabled = enabled;
+
+        // the buffer after bufferTimeout keeps the timer from overflowing while all batch slots are busy
+        this.batching = Flux.<BatchRequest>create(sink -> this.requests = sink)
+                .bufferTimeout(maxBatchSize, window)
+                .onBackpressureBuffer()
+                .flatMap(this::loadBatch, maxConcurrentBatches)
+                .subscribe();
+    }
+
+    public Mono<Beer> load(Integer beerId) {
+        if (!enabled) {
+            Mono<Beer> query = beerShards.isEnabled()
+                    ? beerShards.on(beerShards.shardOf(beerId), beerRepository.findById(beerId))
+                    : beerReadRouting.readById(beerId, beerRepository.findById(beerId));
+            return beerQueryMetrics.timed("find.id", query);
+        }
+        return Mono.create(sink -> requests.next(new BatchRequest(beerId, sink)));
+    }
+
+    private Mono<Void> loadBatch(List<BatchRequest> batch) {
+        DistributionSummary sizes = batchSizes;
+        if (sizes != null) {
+            sizes.record(batch.size());
+        }
+        Set<Integer> ids = batch.stream().map(BatchRequest::getBeerId).collect(toSet());
+
+        return beerQueryMetrics.timed("find.id.batch", findAllById(ids))
+                .collectMap(Beer::getId)
+                .doOnNext(beers -> batch.forEach(request -> request.complete(beers)))
+                .doOnError(e -> batch.forEach(request -> request.getSink().error(e)))
+                .onErrorResume(e -> {
+                    log.debug("Batch load of {} beer ids failed", ids.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Flux<Beer> findAllById(Set<Integer> ids) {
+        if (beerShards.isEnabled()) {
+            // one query per shard that holds any of the ids, all shards at once
+            return Flux.fromIterable(beerShards.groupByShard(ids, Function.identity()).entrySet())
+                    .flatMap(shard -> beerShards.on(shard.getKey(), beerRepository.findAllById(shard.getValue())));
+        }
+        return beerReadRouting.readByIds(ids, beerRepository.findAllById(ids));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batching.dispose();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        batchSizes = DistributionSummary.builder("beer.batch.size")
+                .description("Ids loaded per findAllById batch")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @lombok.Value
+    private static class BatchRequest {
+        Integer beerId;
+        MonoSink<Beer> sink;
+
+        void complete(Map<Integer, Beer> beers) {
+            Beer beer = beers.get(beerId);
+            if (beer != null) {
+                sink.success(beer);
+            } else {
+                sink.success();
+            }
+        }
+    }
+}
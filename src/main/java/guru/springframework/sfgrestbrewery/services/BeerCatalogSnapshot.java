@@ -0,0 +1,272 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.cache.BeerCaches;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.data.r2dbc.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.empty;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * An immutable in-memory copy of the whole beer catalog, indexed by id, UPC, style and name, for the
+ * opt-in {@code sfg.brewery.catalog-snapshot.enabled} mode. Reads take the current snapshot from a
+ * volatile field, so they need neither a lock nor the database.
+ *
+ * Writes still go to the table first. Every beer a write touches is marked dirty and served from the
+ * table until a refresh has re-read it and swapped in a new snapshot; lists fall back while anything
+ * is dirty. Besides those write-triggered refreshes, a periodic delta reload picks up rows another
+ * instance changed, by {@code last_modified_date}, and a full reload every {@code full-reload-interval}
+ * drops rows another instance deleted.
+ */
+@Slf4j
+@Component
+public class BeerCatalogSnapshot implements MeterBinder {
+
+    private final R2dbcEntityTemplate template;
+    private final BeerShards beerShards;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final boolean enabled;
+    private final Duration reloadInterval;
+    private final Duration deltaOverlap;
+    private final long fullReloadNanos;
+    private final AtomicLong writes = new AtomicLong();
+    private final Sinks.Many<Boolean> written = Sinks.many().multicast().directBestEffort();
+
+    // beer id -> the write that made it dirty, so a refresh only clears the marks it has read past
+    private final Map<Integer, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong unknownWrite = new AtomicLong();
+    private volatile Catalog catalog;
+    private volatile Disposable refreshes;
+
+    public BeerCatalogSnapshot(R2dbcEntityTemplate template, BeerShards beerShards, BeerQueryMetrics beerQueryMetrics,
+                               BeerCaches beerCaches,
+                               @Value("${sfg.brewery.catalog-snapshot.enabled:false}") boolean enabled,
+                               @Value("${sfg.brewery.catalog-snapshot.reload-interval:1s}") Duration reloadInterval,
+                               @Value("${sfg.brewery.catalog-snapshot.delta-overlap:5s}") Duration deltaOverlap,
+                               @Value("${sfg.brewery.catalog-snapshot.full-reload-interval:10m}") Duration fullReloadInterval) {
+        this.template = template;
+        this.beerShards = beerShards;
+        this.beerQueryMetrics = beerQueryMetrics;
+        this.enabled = enabled;
+        this.reloadInterval = reloadInterval;
+        this.deltaOverlap = deltaOverlap;
+        this.fullReloadNanos = fullReloadInterval.toNanos();
+
+        if (enabled) {
+            beerCaches.addEvictionListener(this::written);
+        }
+    }
+
+    public boolean servesId(Integer beerId) {
+        return catalog != null && unknownWrite.get() == 0 && !dirty.containsKey(beerId);
+    }
+
+    public Beer byId(Integer beerId) {
+        return catalog.byId.get(beerId);
+    }
+
+    /**
+     * A miss is only trusted while nothing is dirty, since a dirty beer may have just taken the UPC.
+     */
+    public boolean servesUpc(String upc) {
+        Catalog current = catalog;
+        if (current == null || unknownWrite.get() != 0) {
+            return false;
+        }
+        Beer beer = current.byUpc.get(upc);
+        return beer != null ? !dirty.containsKey(beer.getId()) : dirty.isEmpty();
+    }
+
+    public Beer byUpc(String upc) {
+        return catalog.byUpc.get(upc);
+    }
+
+    public boolean servesLists() {
+        return catalog != null && unknownWrite.get() == 0 && dirty.isEmpty();
+    }
+
+    /**
+     * @return the beers with exactly this name and style, either of which may be empty, in id order
+     */
+    public List<Beer> matching(String beerName, BeerStyleEnum beerStyle) {
+        Catalog current = catalog;
+        boolean byName = StringUtils.hasLength(beerName);
+        if (byName && beerStyle != null) {
+            return current.byName.getOrDefault(beerName, List.of()).stream()
+                    .filter(beer -> beer.getBeerStyle() == beerStyle)
+                    .collect(toList());
+        } else if (byName) {
+            return current.byName.getOrDefault(beerName, List.of());
+        } else if (beerStyle != null) {
+            return current.byStyle.getOrDefault(beerStyle, List.of());
+        }
+        return current.all;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+
+        // one refresh at a time; a write signal arriving during a refresh waits for it, further ones are
+        // dropped, and the dirty marks they left are picked up by the next refresh either way
+        refreshes = Flux.merge(Flux.interval(Duration.ZERO, reloadInterval).map(tick -> true), written.asFlux())
+                .onBackpressureDrop()
+                .concatMap(signal -> refresh(), 1)
+                .subscribe();
+    }
+
+    /**
+     * Loads the catalog if there is none yet or a full reload is due, and otherwise re-reads the dirty
+     * beers and the rows modified since the last refresh; then swaps in the new snapshot.
+     */
+    public Mono<Void> refresh() {
+        return Mono.defer(() -> {
+            Catalog current = catalog;
+            Map<Integer, Long> reading = Map.copyOf(dirty);
+            long unknown = unknownWrite.get();
+            LocalDateTime startedAt = LocalDateTime.now();
+            long startedNanos = System.nanoTime();
+
+            Mono<Catalog> next;
+            if (current == null || unknown != 0 || startedNanos - current.fullLoadNanos >= fullReloadNanos) {
+                next = beerQueryMetrics.timed("catalog.load", select(empty()))
+                        .collectList()
+                        .map(beers -> new Catalog(beers, startedAt, startedNanos));
+            } else {
+                Flux<Beer> modified = select(query(where("lastModifiedDate").greaterThanOrEquals(current.loadedAt.minus(deltaOverlap))));
+                Flux<Beer> reread = reading.isEmpty() ? Flux.empty() : select(query(where("id").in(reading.keySet())));
+                next = beerQueryMetrics.timed("catalog.delta", Flux.merge(modified, reread))
+                        .collectList()
+                        .map(changed -> current.with(changed, reading.keySet(), startedAt));
+            }
+
+            return next.doOnNext(loaded -> {
+                        // swap before clearing, so a beer is never clean while the snapshot still has its old row
+                        catalog = loaded;
+                        reading.forEach(dirty::remove);
+                        unknownWrite.compareAndSet(unknown, 0);
+                    })
+                    .then()
+                    .onErrorResume(e -> {
+                        log.warn("Catalog snapshot refresh failed, serving dirty beers from the table until the next one", e);
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    private Flux<Beer> select(Query query) {
+        return beerShards.isEnabled()
+                ? beerShards.scatter(shard -> template.select(Beer.class).matching(query).all())
+                : template.select(Beer.class).matching(query).all();
+    }
+
+    private void written(Integer beerId, String upc) {
+        long write = writes.incrementAndGet();
+        if (beerId != null) {
+            dirty.put(beerId, write);
+        } else {
+            unknownWrite.set(write);
+        }
+        // best effort: a signal lost to a concurrent emit is covered by the next periodic refresh
+        written.tryEmitNext(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (refreshes != null) {
+            refreshes.dispose();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        Gauge.builder("beer.catalog.size", this, snapshot -> snapshot.catalog != null ? snapshot.catalog.byId.size() : 0)
+                .description("Beers in the in-memory catalog snapshot")
+                .register(registry);
+        Gauge.builder("beer.catalog.dirty", dirty, Map::size)
+                .description("Beers written since the catalog snapshot last read them")
+                .register(registry);
+    }
+
+    private static final class Catalog {
+
+        private final Map<Integer, Beer> byId;
+        private final Map<String, Beer> byUpc;
+        private final Map<BeerStyleEnum, List<Beer>> byStyle;
+        private final Map<String, List<Beer>> byName;
+        private final List<Beer> all;
+        private final LocalDateTime loadedAt;
+        private final long fullLoadNanos;
+
+        private Catalog(Collection<Beer> beers, LocalDateTime loadedAt, long fullLoadNanos) {
+            List<Beer> inIdOrder = beers.stream().sorted(Comparator.comparing(Beer::getId)).collect(toList());
+            Map<Integer, Beer> ids = new HashMap<>();
+            Map<String, Beer> upcs = new HashMap<>();
+            inIdOrder.forEach(beer -> {
+                ids.put(beer.getId(), beer);
+                if (beer.getUpc() != null) {
+                    upcs.put(beer.getUpc(), beer);
+                }
+            });
+
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byUpc = Collections.unmodifiableMap(upcs);
+            this.byStyle = Collections.unmodifiableMap(inIdOrder.stream()
+                    .filter(beer -> beer.getBeerStyle() != null)
+                    .collect(groupingBy(Beer::getBeerStyle, () -> new EnumMap<>(BeerStyleEnum.class), toList())));
+            this.byName = Collections.unmodifiableMap(inIdOrder.stream()
+                    .filter(beer -> beer.getBeerName() != null)
+                    .collect(groupingBy(Beer::getBeerName, HashMap::new, toList())));
+            this.all = Collections.unmodifiableList(inIdOrder);
+            this.loadedAt = loadedAt;
+            this.fullLoadNanos = fullLoadNanos;
+        }
+
+        /**
+         * A copy with the changed rows replaced; a re-read beer that did not come back was deleted.
+         */
+        private Catalog with(List<Beer> changed, Set<Integer> reread, LocalDateTime loadedAt) {
+            Map<Integer, Beer> beers = new HashMap<>(byId);
+            reread.forEach(beers::remove);
+            changed.forEach(beer -> beers.put(beer.getId(), beer));
+            return new Catalog(beers.values(), loadedAt, fullLoadNanos);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.spi.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gathers inventory deltas in memory and writes them to the {@code beer} table in periodic batches.
+ *
+ * Each beer has a {@link LongAdder}, so concurrent adjustments of a hot beer land on different cells
+ * instead of contending on one row or one CAS. Every {@code flushInterval} the accumulated deltas are
+ * swapped out and applied with one batched {@code quantity_on_hand = quantity_on_hand + ?} statement;
+ * a failed flush puts its deltas back, and shutdown flushes whatever is still pending.
+ */
+@Slf4j
+@Component
+public class BeerInventoryAccumulator implements MeterBinder {
+
+    private static final String ADJUST_INVENTORY = "UPDATE beer SET quantity_on_hand = COALESCE(quantity_on_hand, 0) + $1 WHERE id = $2";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final BeerShards beerShards;
+    private final Duration shutdownTimeout;
+    private final LongAdder adjustments = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final Sinks.One<Boolean> stop = Sinks.one();
+    private final Mono<Void> stopped;
+    // set once bound; flushes before that are not recorded
+    private volatile DistributionSummary flushSizes;
+
+    // entries are kept once created; the map is bounded by the beers that ever had an adjustment
+    private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> inFlight = new ConcurrentHashMap<>();
+    // moving deltas between pending and inFlight takes the write lock, so pendingDelta never sees a delta
+    // in both places or in neither; adjust stays lock-free
+    private final ReadWriteLock handover = new ReentrantReadWriteLock();
+    // bumped when a flush hands its deltas over and again when it settles; odd while one is running
+    private final AtomicLong flushSequence = new AtomicLong();
+
+    public BeerInventoryAccumulator(DatabaseClient databaseClient, TransactionalOperator transactionalOperator,
+                                    BeerQueryMetrics beerQueryMetrics, BeerShards beerShards,
+                                    @Value("${sfg.brewery.inventory.flush-interval:200ms}") Duration flushInterval,
+                                    @Value("${sfg.brewery.inventory.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.beerQueryMetrics = beerQueryMetrics;
+        this.beerShards = beerShards;
+        this.shutdownTimeout = shutdownTimeout;
+
+        // one flush at a time; ticks that arrive while a flush is running are dropped. Stopping lets a
+        // running flush finish rather than cancelling it halfway through its transaction.
+        this.stopped = Flux.interval(flushInterval)
+                .takeUntilOther(stop.asMono())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .then()
+                .cache();
+        this.stopped.subscribe();
+    }
+
+    public void adjust(Integer beerId, long delta) {
+        adjustPending(beerId, delta);
+        adjustments.increment();
+    }
+
+    /**
+     * @return the delta not yet committed to the table, including one being flushed right now
+     */
+    public long pendingDelta(Integer beerId) {
+        handover.readLock().lock();
+        try {
+            LongAdder delta = pending.get(beerId);
+            return (delta != null ? delta.sum() : 0) + inFlight.getOrDefault(beerId, 0L);
+        } finally {
+            handover.readLock().unlock();
+        }
+    }
+
+    /**
+     * The beer's quantity on hand: {@code committed}, read from the table, plus the deltas not in it yet.
+     * A flush that runs while the row is read could have its delta counted twice or not at all, so the
+     * read is repeated until it falls between flushes, which run for milliseconds every flush interval.
+     *
+     * @param committed reads the stored quantity; subscribed once per attempt
+     */
+    public Mono<Long> onHand(Integer beerId, Mono<Integer> committed) {
+        return Mono.defer(() -> {
+                    long sequence = flushSequence.get();
+                    return committed.map(quantity -> {
+                        long onHand = quantity + pendingDelta(beerId);
+                        if (sequence % 2 != 0 || flushSequence.get() != sequence) {
+                            throw new FlushOverlapped();
+                        }
+                        return onHand;
+                    });
+                })
+                .retryWhen(Retry.backoff(20, Duration.ofMillis(1))
+                        .maxBackoff(Duration.ofMillis(50))
+                        .filter(FlushOverlapped.class::isInstance));
+    }
+
+    /**
+     * Writes all pending deltas in one transaction.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            // sumThenReset swaps each cell atomically, so an add racing the swap lands in this flush or the next
+            Map<Integer, Long> deltas = new LinkedHashMap<>();
+            handover.writeLock().lock();
+            try {
+                pending.forEach((beerId, delta) -> {
+                    long sum = delta.sumThenReset();
+                    if (sum != 0) {
+                        deltas.put(beerId, intSized(beerId, sum, delta));
+                    }
+                });
+                inFlight.putAll(deltas);
+                if (!deltas.isEmpty()) {
+                    flushSequence.incrementAndGet();
+                }
+            } finally {
+                handover.writeLock().unlock();
+            }
+            if (deltas.isEmpty()) {
+                return Mono.empty();
+            }
+
+            DistributionSummary sizes = flushSizes;
+            if (sizes != null) {
+                sizes.record(deltas.size());
+            }
+
+            Map<Integer, Long> failed = new ConcurrentHashMap<>();
+            return write(deltas, failed)
+                    .onErrorResume(e -> {
+                        flushFailures.increment();
+                        log.warn("Inventory flush of {} beers failed, keeping the deltas for the next flush", deltas.size(), e);
+                        failed.putAll(deltas);
+                        return Mono.empty();
+                    })
+                    .doFinally(signal -> settle(deltas, failed));
+        });
+    }
+
+    /**
+     * Ends a flush: its deltas leave inFlight and the failed ones go back to pending, in one step.
+     */
+    private void settle(Map<Integer, Long> deltas, Map<Integer, Long> failed) {
+        handover.writeLock().lock();
+        try {
+            failed.forEach(this::adjustPending);
+            deltas.keySet().forEach(inFlight::remove);
+            flushSequence.incrementAndGet();
+        } finally {
+            handover.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The column is an integer: a delta beyond its range is written in int-sized parts over successive
+     * flushes, the rest staying pending.
+     */
+    private static long intSized(Integer beerId, long sum, LongAdder pendingDelta) {
+        long part = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sum));
+        if (part != sum) {
+            log.warn("Inventory delta {} of beer {} exceeds the column range, writing {} now", sum, beerId, part);
+            pendingDelta.add(sum - part);
+        }
+        return part;
+    }
+
+    private void adjustPending(Integer beerId, long delta) {
+        pending.computeIfAbsent(beerId, id -> new LongAdder()).add(delta);
+    }
+
+    private Mono<Void> write(Map<Integer, Long> deltas, Map<Integer, Long> failed) {
+        List<Map.Entry<Integer, Long>> rows = List.copyOf(deltas.entrySet());
+        if (!beerShards.isEnabled()) {
+            return beerQueryMetrics.timed("inventory.flush", update(rows)).then();
+        }
+
+        // one transaction per shard, so only a failed shard's deltas go back for the next flush
+        return Flux.fromIterable(beerShards.groupByShard(rows, Map.Entry::getKey).entrySet())
+                .flatMap(shard -> beerQueryMetrics.timed("inventory.flush", beerShards.on(shard.getKey(), update(shard.getValue())))
+                        .then()
+                        .onErrorResume(e -> {
+                            flushFailures.increment();
+                            log.warn("Inventory flush of {} beers on shard {} failed, keeping the deltas for the next flush",
+                                    shard.getValue().size(), shard.getKey(), e);
+                            shard.getValue().forEach(row -> failed.put(row.getKey(), row.getValue()));
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    private Flux<Integer> update(List<Map.Entry<Integer, Long>> rows) {
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(ADJUST_INVENTORY);
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        statement.bind(0, Math.toIntExact(rows.get(i).getValue()));
+                        statement.bind(1, rows.get(i).getKey());
+                    }
+                    return Flux.from(statement.execute()).concatMap(result -> result.getRowsUpdated());
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    private double pendingBeers() {
+        return pending.values().stream().filter(delta -> delta.sum() != 0).count();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        flushSizes = DistributionSummary.builder("beer.inventory.flush.size")
+                .description("Beers updated per inventory flush")
+                .register(registry);
+        FunctionCounter.builder("beer.inventory.adjustments", adjustments, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("beer.inventory.flush.failures", flushFailures, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("beer.inventory.pending", this, BeerInventoryAccumulator::pendingBeers)
+                .description("Beers with an inventory delta not yet written")
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stop.tryEmitValue(true);
+        stopped.then(flush()).block(shutdownTimeout);
+        log.debug("Flushed pending inventory on shutdown");
+    }
+
+    private static final class FlushOverlapped extends RuntimeException {
+
+        private FlushOverlapped() {
+            super("A flush ran while the quantity on hand was read", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.springframework.data.relational.core.query.Query.empty;
+
+/**
+ * In-process index for partial beer name and UPC search. Name prefixes and UPC prefixes are range scans
+ * over sorted maps; substrings of three or more characters intersect the trigram postings, starting
+ * from the rarest trigram, and are then checked against the name itself.
+ *
+ * Built from the table once the app is ready and kept current by the beer service's own writes, so
+ * writes made by other instances are only seen after a restart. Searches never lock: a write removes
+ * and re-adds one beer's entries under the index's monitor, and a search that catches it halfway
+ * re-checks every candidate against the beer's current name.
+ */
+@Slf4j
+@Component
+public class BeerNameSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final R2dbcEntityTemplate template;
+    private final BeerShards beerShards;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final int maxResults;
+
+    private final Map<Integer, Entry> beers = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<Integer>> byName = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, Integer> byUpc = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<Integer>> byTrigram = new ConcurrentHashMap<>();
+
+    // beers written while the initial load runs; the load must not overwrite them with the rows it read earlier
+    private final Set<Integer> writtenWhileLoading = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    public BeerNameSearchIndex(R2dbcEntityTemplate template, BeerShards beerShards, BeerQueryMetrics beerQueryMetrics,
+                               @Value("${sfg.brewery.search.max-results:500}") int maxResults) {
+        this.template = template;
+        this.beerShards = beerShards;
+        this.beerQueryMetrics = beerQueryMetrics;
+        this.maxResults = maxResults;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void load() {
+        Flux<Beer> all = beerShards.isEnabled()
+                ? beerShards.scatter(shard -> template.select(Beer.class).matching(empty()).all())
+                : template.select(Beer.class).matching(empty()).all();
+
+        beerQueryMetrics.timed("search.load", all)
+                .doOnNext(beer -> {
+                    synchronized (this) {
+                        if (!writtenWhileLoading.contains(beer.getId())) {
+                            put(beer.getId(), beer.getBeerName(), beer.getUpc());
+                        }
+                    }
+                })
+                .count()
+                .doFinally(signal -> {
+                    loaded = true;
+                    writtenWhileLoading.clear();
+                })
+                .subscribe(count -> log.info("Indexed {} beer names for search", count),
+                        e -> log.warn("Loading the beer name search index failed; only beers written from now on are searchable", e));
+    }
+
+    /**
+     * Indexes a new or changed beer; a null name or UPC keeps the one already indexed.
+     */
+    public synchronized void index(Integer beerId, String beerName, String upc) {
+        if (!loaded) {
+            writtenWhileLoading.add(beerId);
+        }
+        Entry previous = beers.get(beerId);
+        put(beerId,
+                beerName != null ? beerName : previous != null ? previous.getName() : null,
+                upc != null ? upc : previous != null ? previous.getUpc() : null);
+    }
+
+    public synchronized void remove(Integer beerId) {
+        if (!loaded) {
+            writtenWhileLoading.add(beerId);
+        }
+        Entry previous = beers.remove(beerId);
+        if (previous != null) {
+            unlink(beerId, previous);
+        }
+    }
+
+    /**
+     * @return the ids of at most {@code max-results} matching beers: exact and prefix name matches in name
+     * order, then other name substring matches in name order, then UPC prefix matches; and the number of
+     * all matches. Past the cap the substring matches are the first ones found rather than the first by name.
+     */
+    public Matches search(String q) {
+        String term = normalize(q);
+        if (term.isEmpty()) {
+            return new Matches(List.of(), 0);
+        }
+
+        Set<Integer> results = new LinkedHashSet<>();
+        int total = 0;
+        for (Set<Integer> ids : byName.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+            for (Integer id : ids) {
+                Entry beer = beers.get(id);
+                if (beer != null && beer.getKey().startsWith(term)) {
+                    total++;
+                    if (results.size() < maxResults) {
+                        results.add(id);
+                    }
+                }
+            }
+        }
+
+        List<Set<Integer>> postings = term.length() >= GRAM ? postings(term) : List.of();
+        if (!postings.isEmpty()) {
+            List<Entry> contained = new ArrayList<>();
+            for (Integer id : postings.get(0)) {
+                Entry beer = beers.get(id);
+                if (beer != null && !beer.getKey().startsWith(term) && postings.stream().allMatch(ids -> ids.contains(id))
+                        && beer.getKey().contains(term)) {
+                    total++;
+                    if (results.size() + contained.size() < maxResults) {
+                        contained.add(beer);
+                    }
+                }
+            }
+            contained.sort(Comparator.comparing(Entry::getKey).thenComparing(Entry::getId));
+            contained.forEach(beer -> results.add(beer.getId()));
+        }
+
+        for (Integer id : byUpc.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+            Entry beer = beers.get(id);
+            if (beer == null || matchesName(beer, term)) {
+                continue;
+            }
+            total++;
+            if (results.size() < maxResults) {
+                results.add(id);
+            }
+        }
+        return new Matches(List.copyOf(results), total);
+    }
+
+    private static boolean matchesName(Entry beer, String term) {
+        return beer.getKey().startsWith(term) || term.length() >= GRAM && beer.getKey().contains(term);
+    }
+
+    /**
+     * The postings of every trigram in the term, rarest first; empty if any trigram occurs in no name.
+     */
+    private List<Set<Integer>> postings(String term) {
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (String trigram : trigrams(term)) {
+            Set<Integer> ids = byTrigram.get(trigram);
+            if (ids == null) {
+                return List.of();
+            }
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        return postings;
+    }
+
+    private void put(Integer beerId, String beerName, String upc) {
+        Entry previous = beers.get(beerId);
+        if (previous != null) {
+            unlink(beerId, previous);
+        }
+
+        Entry beer = new Entry(beerId, normalize(beerName), beerName, upc);
+        beers.put(beerId, beer);
+        byName.computeIfAbsent(beer.getKey(), key -> ConcurrentHashMap.newKeySet()).add(beerId);
+        trigrams(beer.getKey()).forEach(trigram -> byTrigram.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(beerId));
+        if (upc != null) {
+            byUpc.put(upc, beerId);
+        }
+    }
+
+    private void unlink(Integer beerId, Entry beer) {
+        removeFrom(byName, beer.getKey(), beerId);
+        trigrams(beer.getKey()).forEach(trigram -> removeFrom(byTrigram, trigram, beerId));
+        if (beer.getUpc() != null) {
+            byUpc.remove(beer.getUpc(), beerId);
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<Integer>> postings, String key, Integer beerId) {
+        postings.computeIfPresent(key, (k, ids) -> {
+            ids.remove(beerId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> trigrams(String key) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            trigrams.add(key.substring(i, i + GRAM));
+        }
+        return trigrams;
+    }
+
+    private static String normalize(String text) {
+        return text != null ? text.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Matches {
+        private final List<Integer> ids;
+        private final int total;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final Integer id;
+        private final String key;
+        private final String name;
+        private final String upc;
+    }
+}
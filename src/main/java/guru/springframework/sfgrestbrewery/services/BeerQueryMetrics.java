@@ -0,0 +1,76 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times beer queries as {@code beer.query} timers with percentile histograms, tagged with the query type
+ * and whether it completed, failed or was cancelled. The time runs from subscription to the terminal signal,
+ * so for a multi-row select it includes the rows' trip through the pipeline as well as the database.
+ *
+ * With {@code sfg.brewery.metrics.reactor.enabled=true} the same pipelines also publish Reactor's own
+ * {@code metrics()} meters (subscriptions, requests, onNext intervals), tagged the same way.
+ *
+ * Queries run before the registry has bound this component, during startup, are not timed.
+ */
+@Component
+public class BeerQueryMetrics implements MeterBinder {
+
+    static final String QUERY_TIMER = "beer.query";
+
+    private final boolean reactorMetrics;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    public BeerQueryMetrics(@Value("${sfg.brewery.metrics.reactor.enabled:false}") boolean reactorMetrics) {
+        this.reactorMetrics = reactorMetrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+
+    public <T> Mono<T> timed(String query, Mono<T> source) {
+        Mono<T> timed = Mono.defer(() -> {
+            MeterRegistry registry = meterRegistry;
+            if (registry == null) {
+                return source;
+            }
+            Timer.Sample sample = Timer.start(registry);
+            return source.doFinally(signal -> sample.stop(timer(registry, query, signal)));
+        });
+        return reactorMetrics ? timed.name(QUERY_TIMER).tag("query", query).metrics() : timed;
+    }
+
+    public <T> Flux<T> timed(String query, Flux<T> source) {
+        Flux<T> timed = Flux.defer(() -> {
+            MeterRegistry registry = meterRegistry;
+            if (registry == null) {
+                return source;
+            }
+            Timer.Sample sample = Timer.start(registry);
+            return source.doFinally(signal -> sample.stop(timer(registry, query, signal)));
+        });
+        return reactorMetrics ? timed.name(QUERY_TIMER).tag("query", query).metrics() : timed;
+    }
+
+    private Timer timer(MeterRegistry registry, String query, SignalType signal) {
+        String outcome = signal == SignalType.ON_ERROR ? "error" : signal == SignalType.CANCEL ? "cancelled" : "success";
+        return timers.computeIfAbsent(query + ':' + outcome, key -> Timer.builder(QUERY_TIMER)
+                .description("Beer query time, from subscription to completion")
+                .tag("query", query)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
@@ -0,0 +1,78 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.cache.SingleFlight;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight front of the beer repository reads, so a burst of identical lookups (a cold cache entry,
+ * right after a deploy) costs one query. Distinct ids are further micro-batched by {@link BeerByIdBatchLoader}.
+ * Callers must not mutate the returned {@link Beer}, it is shared.
+ */
+@Component
+public class BeerReadCoalescer implements MeterBinder {
+
+    private final BeerRepository beerRepository;
+    private final BeerByIdBatchLoader beerByIdBatchLoader;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final BeerReadRouting beerReadRouting;
+    private final BeerShards beerShards;
+    private final SingleFlight<Integer, Beer> byId;
+    private final SingleFlight<String, Beer> byUpc;
+
+    public BeerReadCoalescer(BeerRepository beerRepository, BeerByIdBatchLoader beerByIdBatchLoader,
+                             BeerQueryMetrics beerQueryMetrics, BeerReadRouting beerReadRouting, BeerShards beerShards,
+                             @Value("${sfg.brewery.single-flight.max-in-flight:10000}") int maxInFlight) {
+        this.beerRepository = beerRepository;
+        this.beerByIdBatchLoader = beerByIdBatchLoader;
+        this.beerQueryMetrics = beerQueryMetrics;
+        this.beerReadRouting = beerReadRouting;
+        this.beerShards = beerShards;
+        this.byId = new SingleFlight<>("beerById", maxInFlight);
+        this.byUpc = new SingleFlight<>("beerByUpc", maxInFlight);
+    }
+
+    public Mono<Beer> findById(Integer beerId) {
+        return byId.execute(beerId, beerByIdBatchLoader::load);
+    }
+
+    /**
+     * Reads the row from the primary, without coalescing, for callers that must see every committed write.
+     */
+    public Mono<Beer> findByIdOnPrimary(Integer beerId) {
+        Mono<Beer> query = beerShards.isEnabled()
+                ? beerShards.on(beerShards.shardOf(beerId), beerRepository.findById(beerId))
+                : beerRepository.findById(beerId);
+        return beerQueryMetrics.timed("find.id", query);
+    }
+
+    public Mono<Beer> findByUpc(String upc) {
+        return byUpc.execute(upc, key -> beerQueryMetrics.timed("find.upc", queryByUpc(key)));
+    }
+
+    private Mono<Beer> queryByUpc(String upc) {
+        if (!beerShards.isEnabled()) {
+            return beerReadRouting.readByUpc(upc, beerRepository.findByUpc(upc));
+        }
+
+        // the shard the UPC hashes to holds the beer unless its UPC was changed after the insert
+        int placement = beerShards.placementOf(upc);
+        return beerShards.on(placement, beerRepository.findByUpc(upc))
+                .switchIfEmpty(Mono.defer(() -> beerShards.scatter(shard -> shard == placement
+                                ? Flux.<Beer>empty()
+                                : beerRepository.findByUpc(upc).flux())
+                        .next()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        byId.bindTo(registry);
+        byUpc.bindTo(registry);
+    }
+}
@@ -0,0 +1,99 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.sfgrestbrewery.cache.BeerCaches;
+import guru.springframework.sfgrestbrewery.repositories.ReplicaRoutingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which beer reads may be served by a replica. Lists, counts and lookups go to a replica, except
+ * lookups of a beer written within {@code read-your-writes-window}, and lists and counts while any beer
+ * was: those stay on the primary, so a read after a write neither returns nor re-caches the replica's
+ * older copy. Does nothing unless {@code sfg.brewery.r2dbc.replicas} is set.
+ */
+@Component
+public class BeerReadRouting {
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final Cache<Object, Boolean> recentWrites;
+    private volatile long anyUpcWrittenAt;
+    private volatile long anyWrittenAt;
+
+    public BeerReadRouting(BeerCaches beerCaches,
+                           @Value("${sfg.brewery.r2dbc.replicas:}") List<String> replicaUrls,
+                           @Value("${sfg.brewery.r2dbc.read-your-writes-window:5s}") Duration window) {
+        this.enabled = replicaUrls.stream().anyMatch(StringUtils::hasText);
+        this.windowNanos = window.toNanos();
+        this.anyUpcWrittenAt = System.nanoTime() - windowNanos;
+        this.anyWrittenAt = anyUpcWrittenAt;
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(windowNanos, TimeUnit.NANOSECONDS)
+                .build();
+        if (enabled) {
+            beerCaches.addEvictionListener(this::written);
+        }
+    }
+
+    /**
+     * Routes a list or count read; any write may have changed its result.
+     */
+    public <T> Mono<T> read(Mono<T> query) {
+        return enabled && !recentlyWritten() ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    public <T> Flux<T> read(Flux<T> query) {
+        return enabled && !recentlyWritten() ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    public <T> Mono<T> readById(Integer beerId, Mono<T> query) {
+        return enabled && !recentlyWritten(beerId) ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    public <T> Flux<T> readByIds(Collection<Integer> beerIds, Flux<T> query) {
+        return enabled && beerIds.stream().noneMatch(this::recentlyWritten) ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    public <T> Mono<T> readByUpc(String upc, Mono<T> query) {
+        return enabled && !recentlyWritten(upc) ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    public <T> Flux<T> readByUpcs(Collection<String> upcs, Flux<T> query) {
+        return enabled && upcs.stream().noneMatch(this::recentlyWritten) ? ReplicaRoutingConnectionFactory.onReplica(query) : query;
+    }
+
+    private boolean recentlyWritten() {
+        return System.nanoTime() - anyWrittenAt < windowNanos;
+    }
+
+    private boolean recentlyWritten(Integer beerId) {
+        return recentWrites.getIfPresent(beerId) != null;
+    }
+
+    private boolean recentlyWritten(String upc) {
+        return System.nanoTime() - anyUpcWrittenAt < windowNanos || recentWrites.getIfPresent(upc) != null;
+    }
+
+    private void written(Integer beerId, String upc) {
+        anyWrittenAt = System.nanoTime();
+        if (beerId != null) {
+            recentWrites.put(beerId, Boolean.TRUE);
+        }
+        if (upc != null) {
+            recentWrites.put(upc, Boolean.TRUE);
+        } else {
+            // the old UPC is unknown, so no UPC lookup can trust a replica until the window passes
+            anyUpcWrittenAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * In-memory reservation ledger. Each beer's available stock is an {@link AtomicLong} loaded on first use
+ * (stored quantity plus pending adjustments, read between two inventory flushes, minus outstanding
+ * reservations) and taken with a compare-and-set loop, so concurrent checkouts of one beer never take
+ * more than is there and never block. Releases and adjustments are applied to a loaded stock only; one that
+ * arrives while the stock is loading marks the load stale, since the load may or may not have read it, and
+ * the stock is loaded again.
+ *
+ * A committed reservation is handed to {@link BeerInventoryAccumulator} to be persisted with the next
+ * flush; an abandoned one is returned to stock once its time to live has passed.
+ */
+@Slf4j
+@Component
+public class BeerReservationLedger implements MeterBinder {
+
+    private final BeerReadCoalescer beerReadCoalescer;
+    private final BeerInventoryAccumulator beerInventoryAccumulator;
+    private final Duration timeToLive;
+    private final Map<Integer, Stock> stock = new ConcurrentHashMap<>();
+    private final Map<UUID, Reservation> reservations = new ConcurrentHashMap<>();
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final Disposable sweeping;
+
+    public BeerReservationLedger(BeerReadCoalescer beerReadCoalescer, BeerInventoryAccumulator beerInventoryAccumulator,
+                                 @Value("${sfg.brewery.reservations.ttl:15m}") Duration timeToLive,
+                                 @Value("${sfg.brewery.reservations.sweep-interval:10s}") Duration sweepInterval) {
+        this.beerReadCoalescer = beerReadCoalescer;
+        this.beerInventoryAccumulator = beerInventoryAccumulator;
+        this.timeToLive = timeToLive;
+        this.sweeping = Flux.interval(sweepInterval).subscribe(tick -> expire());
+    }
+
+    /**
+     * Errors with {@link NotFoundException} for an unknown beer and {@link InsufficientInventoryException}
+     * when less than {@code quantity} is available.
+     */
+    public Mono<BeerReservation> reserve(Integer beerId, int quantity) {
+        return available(beerId)
+                .switchIfEmpty(Mono.error(new NotFoundException()))
+                .map(available -> {
+                    if (!take(available, quantity)) {
+                        rejected.increment();
+                        throw new InsufficientInventoryException(beerId, quantity);
+                    }
+
+                    UUID id = UUID.randomUUID();
+                    reservations.put(id, new Reservation(beerId, quantity, System.nanoTime() + timeToLive.toNanos()));
+                    reserved.increment();
+
+                    return BeerReservation.builder()
+                            .id(id)
+                            .beerId(beerId)
+                            .quantity(quantity)
+                            .expiresAt(OffsetDateTime.now().plus(timeToLive))
+                            .build();
+                });
+    }
+
+    private static boolean take(AtomicLong available, int quantity) {
+        long current;
+        do {
+            current = available.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    /**
+     * Returns the reserved stock. Errors with {@link NotFoundException} if the reservation is unknown,
+     * already committed or expired.
+     */
+    public Mono<Void> release(UUID reservationId) {
+        return Mono.defer(() -> {
+            Reservation reservation = claim(reservationId);
+            if (reservation == null) {
+                return Mono.error(new NotFoundException());
+            }
+
+            onStock(reservation.getBeerId(), available -> available.addAndGet(reservation.getQuantity()));
+            released.increment();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Turns the reservation into a sale; the stock stays taken and the decrement is written asynchronously.
+     */
+    public Mono<Void> commit(UUID reservationId) {
+        return Mono.defer(() -> {
+            Reservation reservation = claim(reservationId);
+            if (reservation == null) {
+                return Mono.error(new NotFoundException());
+            }
+
+            beerInventoryAccumulator.adjust(reservation.getBeerId(), -reservation.getQuantity());
+            committed.increment();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Applies an inventory adjustment made outside the ledger to the available stock, if it is loaded.
+     */
+    public void adjust(Integer beerId, long delta) {
+        onStock(beerId, available -> available.addAndGet(delta));
+    }
+
+    /**
+     * Drops the loaded stock of a beer whose quantity was overwritten or which was deleted; the next
+     * reservation reloads it.
+     */
+    public void forget(Integer beerId) {
+        stock.remove(beerId);
+    }
+
+    private Mono<AtomicLong> available(Integer beerId) {
+        return Mono.defer(() -> stock.computeIfAbsent(beerId, this::load).available);
+    }
+
+    private Stock load(Integer beerId) {
+        Stock loading = new Stock();
+        loading.available = beerInventoryAccumulator.onHand(beerId, beerReadCoalescer.findByIdOnPrimary(beerId)
+                        .map(beer -> beer.getQuantityOnHand() != null ? beer.getQuantityOnHand() : 0))
+                .flatMap(onHand -> resolve(beerId, loading, onHand - outstanding(beerId)))
+                .doOnError(e -> stock.remove(beerId, loading))
+                .switchIfEmpty(Mono.fromRunnable(() -> stock.remove(beerId, loading)))
+                .cache();
+        return loading;
+    }
+
+    /**
+     * Publishes the loaded stock unless a release or adjustment arrived while it was loading, in which case
+     * it is dropped and loaded again.
+     */
+    private Mono<AtomicLong> resolve(Integer beerId, Stock loading, long available) {
+        Stock current = stock.computeIfPresent(beerId, (id, entry) -> {
+            if (entry != loading) {
+                return entry;
+            }
+            if (entry.stale) {
+                return null;
+            }
+            entry.loaded = new AtomicLong(available);
+            return entry;
+        });
+        return current == loading ? Mono.just(loading.loaded) : available(beerId);
+    }
+
+    private long outstanding(Integer beerId) {
+        return reservations.values().stream()
+                .filter(reservation -> reservation.getBeerId().equals(beerId))
+                .mapToLong(Reservation::getQuantity)
+                .sum();
+    }
+
+    private void onStock(Integer beerId, Consumer<AtomicLong> action) {
+        stock.computeIfPresent(beerId, (id, entry) -> {
+            if (entry.loaded != null) {
+                action.accept(entry.loaded);
+            } else {
+                entry.stale = true;
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Removes the reservation for whoever gets there first: a release, a commit or the expiry sweep.
+     */
+    private Reservation claim(UUID reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation != null && reservation.isExpired(System.nanoTime())) {
+            returnExpired(reservation);
+            return null;
+        }
+        return reservation;
+    }
+
+    void expire() {
+        long now = System.nanoTime();
+        reservations.forEach((id, reservation) -> {
+            if (reservation.isExpired(now) && reservations.remove(id, reservation)) {
+                returnExpired(reservation);
+            }
+        });
+    }
+
+    private void returnExpired(Reservation reservation) {
+        onStock(reservation.getBeerId(), available -> available.addAndGet(reservation.getQuantity()));
+        expired.increment();
+        log.debug("Reservation of {} of beer {} expired", reservation.getQuantity(), reservation.getBeerId());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sweeping.dispose();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("beer.reservations.outstanding", reservations, Map::size)
+                .register(registry);
+        bindCounter(registry, "reserved", reserved);
+        bindCounter(registry, "rejected", rejected);
+        bindCounter(registry, "released", released);
+        bindCounter(registry, "committed", committed);
+        bindCounter(registry, "expired", expired);
+    }
+
+    private static void bindCounter(MeterRegistry registry, String result, LongAdder counter) {
+        FunctionCounter.builder("beer.reservations", counter, LongAdder::sum)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * A beer's stock; {@code loaded} and {@code stale} are only touched inside a compute on {@link #stock}.
+     */
+    private static class Stock {
+        Mono<AtomicLong> available;
+        AtomicLong loaded;
+        boolean stale;
+    }
+
+    @lombok.Value
+    private static class Reservation {
+        Integer beerId;
+        int quantity;
+        long deadline;
+
+        boolean isExpired(long now) {
+            return now - deadline >= 0;
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package guru.springframework.sfgrestbrewery.services;
 
+import guru.springframework.sfgrestbrewery.web.model.BeerCursorPage;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
 
 /**
  * Created by jt on 2019-04-20.
@@ -14,17 +20,75 @@ import java.util.UUID;
 public interface BeerService {
     Mono<BeerPagedList> listBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest, Boolean showInventoryOnHand);
 
+    /**
+     * Pages through the beers whose name starts with or contains {@code q}, or whose UPC starts with it,
+     * best matches first. Served from an in-memory index, never by scanning the table. The total counts
+     * every match, though only the first {@code sfg.brewery.search.max-results} can be paged to.
+     */
+    Mono<BeerPagedList> searchBeers(String q, PageRequest pageRequest);
+
+    Mono<BeerCursorPage> listBeersAfter(String beerName, BeerStyleEnum beerStyle, int afterId, int pageSize, Boolean showInventoryOnHand);
+
+    Flux<BeerDto> streamBeers(String beerName, BeerStyleEnum beerStyle, Boolean showInventoryOnHand);
+
     Mono<BeerDto> getById(Integer beerId, Boolean showInventoryOnHand);
 
+    /**
+     * Adds {@code delta} to the beer's quantity on hand. The adjustment is accumulated in memory and written
+     * in a later batch, but {@link #getById} with inventory sees it at once. Errors with
+     * {@link guru.springframework.sfgrestbrewery.web.controller.NotFoundException} for an unknown beer.
+     */
+    Mono<Void> adjustInventory(Integer beerId, int delta);
+
+    /**
+     * Holds {@code quantity} of the beer for a checkout without ever overselling. Errors with
+     * {@link guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException} when not enough is left.
+     */
+    Mono<BeerReservation> reserve(Integer beerId, int quantity);
+
+    /**
+     * Returns a reservation's stock; errors with NotFoundException if it was already released, committed or expired.
+     */
+    Mono<Void> release(UUID reservationId);
+
+    /**
+     * Sells a reservation's stock; errors with NotFoundException if it was already released, committed or expired.
+     */
+    Mono<Void> commitReservation(UUID reservationId);
+
     Mono<BeerDto> saveNewBeer(BeerDto beerDto);
 
     Mono<BeerDto> saveNewBeer(Mono<BeerDto> beerDto);
 
+    /**
+     * Inserts the beers as one batched statement in a single transaction.
+     * Emits the saved beers in input order once the batch is committed.
+     */
+    Flux<BeerDto> saveNewBeerBatch(List<BeerDto> beerDtos);
+
+    /**
+     * Replaces the beer. A non-null {@code version} makes the update conditional; it then fails with
+     * {@link org.springframework.dao.OptimisticLockingFailureException} if the beer has moved on.
+     */
     Mono<BeerDto> updateBeer(Integer beerId, BeerDto beerDto);
 
+    /**
+     * Updates only the non-null fields of {@code beerDto}, conditional on {@code version} like {@link #updateBeer}.
+     */
+    Mono<BeerDto> patchBeer(Integer beerId, BeerDto beerDto);
+
+    /**
+     * Reads the beer, applies {@code modification} and writes it back at the version read, re-reading and
+     * retrying with backoff when a concurrent update wins. Empty if the beer does not exist.
+     */
+    Mono<BeerDto> modifyBeer(Integer beerId, UnaryOperator<BeerDto> modification);
+
     Mono<BeerDto> getByUpc(String upc);
 
-    void deleteBeerById(Integer beerId);
+    /**
+     * Resolves many ids and UPCs at once, ids first, each in request order, with explicit misses.
+     */
+    Flux<BeerLookupResult> lookupBeers(List<Integer> ids, List<String> upcs);
 
     Mono<Void> reactiveDeleteBeerById(Integer beerId);
 }
@@ -1,22 +1,49 @@
 package guru.springframework.sfgrestbrewery.services;
 
+import guru.springframework.sfgrestbrewery.cache.BeerCaches;
+import guru.springframework.sfgrestbrewery.cache.BeerCountCacheKey;
+import guru.springframework.sfgrestbrewery.cache.BeerListCacheKey;
 import guru.springframework.sfgrestbrewery.domain.Beer;
 import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
 import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
 import guru.springframework.sfgrestbrewery.web.mappers.BeerMapper;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursor;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursorPage;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.r2dbc.spi.Statement;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.query.Criteria;
 import org.springframework.data.relational.core.query.Query;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 import static org.springframework.data.r2dbc.query.Criteria.where;
 import static org.springframework.data.relational.core.query.Query.empty;
@@ -30,90 +57,543 @@ import static org.springframework.data.relational.core.query.Query.query;
 @Service
 @RequiredArgsConstructor
 public class BeerServiceImpl implements BeerService {
+    private static final String INSERT_BEER = "INSERT INTO beer (beer_name, beer_style, upc, version, quantity_on_hand, price, "
+            + "created_date, last_modified_date) VALUES ($1, $2, $3, $4, $5, $6, $7, $8)";
+    private static final String INSERT_BEER_WITH_ID = "INSERT INTO beer (id, beer_name, beer_style, upc, version, quantity_on_hand, "
+            + "price, created_date, last_modified_date) VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9)";
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
     private final BeerRepository beerRepository;
     private final BeerMapper beerMapper;
     private final R2dbcEntityTemplate template;
+    private final BeerCaches beerCaches;
+    private final TransactionalOperator transactionalOperator;
+    private final BeerReadCoalescer beerReadCoalescer;
+    private final BeerWriteLimiter beerWriteLimiter;
+    private final BeerUpdateConflicts beerUpdateConflicts;
+    private final BeerInventoryAccumulator beerInventoryAccumulator;
+    private final BeerReservationLedger beerReservationLedger;
+    private final BeerQueryMetrics beerQueryMetrics;
+    private final BeerReadRouting beerReadRouting;
+    private final BeerShards beerShards;
+    private final BeerCatalogSnapshot beerCatalogSnapshot;
+    private final BeerNameSearchIndex beerNameSearchIndex;
 
-    @Cacheable(cacheNames = "beerListCache", condition = "#showInventoryOnHand == false ")
     @Override
     public Mono<BeerPagedList> listBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest, Boolean showInventoryOnHand) {
-        Query query = null;
+        if (showInventoryOnHand) {
+            return queryBeers(beerName, beerStyle, pageRequest);
+        }
+        if (beerCatalogSnapshot.servesLists()) {
+            return Mono.just(pageOf(beerCatalogSnapshot.matching(beerName, beerStyle), pageRequest));
+        }
+
+        return beerCaches.getBeerListCache().get(BeerListCacheKey.of(beerName, beerStyle, pageRequest),
+                key -> queryBeers(beerName, beerStyle, pageRequest));
+    }
+
+    private Mono<BeerPagedList> queryBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest) {
+        Query query = buildQuery(beerName, beerStyle);
+
+        Flux<Beer> rows = beerShards.isEnabled()
+                ? selectShardedPage(query, pageRequest)
+                : beerReadRouting.read(template.select(Beer.class).matching(query.with(pageRequest)).all());
+        Mono<List<BeerDto>> page = beerQueryMetrics.timed("list.page", rows)
+                .map(beerMapper::beerToBeerDto)
+                .collect(toList());
+
+        // zip subscribes to both at once, so the count runs alongside the page select
+        return Mono.zip(page, countBeers(beerName, beerStyle, query))
+                .map(pageAndTotal -> new BeerPagedList(pageAndTotal.getT1(),
+                        PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize()), pageAndTotal.getT2()));
+    }
+
+    @Override
+    public Mono<BeerPagedList> searchBeers(String q, PageRequest pageRequest) {
+        BeerNameSearchIndex.Matches matches = beerNameSearchIndex.search(q);
+        List<Integer> ids = matches.getIds();
+        int from = (int) Math.min(pageRequest.getOffset(), ids.size());
+        int to = Math.min(from + pageRequest.getPageSize(), ids.size());
+
+        // the page's beers come through the beer cache, so only the ids are held by the index. The total
+        // counts every match, while pages only reach the first max-results of them.
+        return lookupBeers(ids.subList(from, to), null)
+                .filter(BeerLookupResult::isFound)
+                .map(BeerLookupResult::getBeer)
+                .collectList()
+                .map(page -> new BeerPagedList(page, PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize()),
+                        matches.getTotal()));
+    }
+
+    private BeerPagedList pageOf(List<Beer> matching, PageRequest pageRequest) {
+        int from = (int) Math.min(pageRequest.getOffset(), matching.size());
+        int to = Math.min(from + pageRequest.getPageSize(), matching.size());
+
+        return new BeerPagedList(matching.subList(from, to).stream().map(beerMapper::beerToBeerDto).collect(toList()),
+                PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize()), matching.size());
+    }
+
+    /**
+     * Each shard returns its first offset + size rows in id order and the k-way merge skips the offset across
+     * all of them, so a deep page costs offset + size rows per shard; keyset paging does not have that cost.
+     */
+    private Flux<Beer> selectShardedPage(Query query, PageRequest pageRequest) {
+        Query firstRows = query.sort(Sort.by("id")).limit((int) pageRequest.getOffset() + pageRequest.getPageSize());
+
+        return beerShards.mergeSorted(Comparator.comparing(Beer::getId), shard -> template.select(Beer.class).matching(firstRows).all())
+                .skip(pageRequest.getOffset())
+                .take(pageRequest.getPageSize());
+    }
+
+    private Mono<Long> countBeers(String beerName, BeerStyleEnum beerStyle, Query query) {
+        return beerCaches.getBeerCountCache().get(BeerCountCacheKey.of(beerName, beerStyle),
+                key -> beerQueryMetrics.timed("list.count", beerShards.isEnabled()
+                        ? beerShards.sum(shard -> template.count(query, Beer.class))
+                        : beerReadRouting.read(template.count(query, Beer.class))));
+    }
+
+    private Query buildQuery(String beerName, BeerStyleEnum beerStyle) {
         if (!StringUtils.isEmpty(beerName) && !StringUtils.isEmpty(beerStyle)) {
             //search both
-            query = query(where("beerName").is(beerName).and("beerStyle").is(beerStyle));
+            return query(where("beerName").is(beerName).and("beerStyle").is(beerStyle));
         } else if (!StringUtils.isEmpty(beerName) && StringUtils.isEmpty(beerStyle)) {
             //search beer_service name
-            query = query(where("beerName").is(beerName));
+            return query(where("beerName").is(beerName));
         } else if (StringUtils.isEmpty(beerName) && !StringUtils.isEmpty(beerStyle)) {
             //search beer_service style
-            query = query(where("beerStyle").is(beerStyle));
+            return query(where("beerStyle").is(beerStyle));
         } else {
-            query = empty();
+            return empty();
         }
-        return template.select(Beer.class)
-                .matching(query.with(pageRequest))
-                .all()
-                .map(beerMapper::beerToBeerDto)
+    }
+
+    @Override
+    public Mono<BeerCursorPage> listBeersAfter(String beerName, BeerStyleEnum beerStyle, int afterId, int pageSize, Boolean showInventoryOnHand) {
+        Criteria criteria = where("id").greaterThan(afterId);
+        if (!StringUtils.isEmpty(beerName)) {
+            criteria = criteria.and("beerName").is(beerName);
+        }
+        if (!StringUtils.isEmpty(beerStyle)) {
+            criteria = criteria.and("beerStyle").is(beerStyle);
+        }
+
+        Function<Beer, BeerDto> toDto = showInventoryOnHand ? beerMapper::beerToBeerDtoWithInventory : beerMapper::beerToBeerDto;
+
+        // one extra row tells us whether there is a next page without a count
+        Query keyset = query(criteria).sort(Sort.by("id")).limit(pageSize + 1);
+        Flux<Beer> rows = beerShards.isEnabled()
+                ? beerShards.mergeSorted(Comparator.comparing(Beer::getId), shard -> template.select(Beer.class).matching(keyset).all())
+                        .take(pageSize + 1)
+                : beerReadRouting.read(template.select(Beer.class).matching(keyset).all());
+
+        return beerQueryMetrics.timed("list.keyset", rows)
                 .collect(toList())
-                .map(beers -> new BeerPagedList(beers, PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize()), beers.size()));
+                .map(beers -> {
+                    boolean hasNext = beers.size() > pageSize;
+                    List<Beer> page = hasNext ? beers.subList(0, pageSize) : beers;
+
+                    return BeerCursorPage.builder()
+                            .content(page.stream().map(toDto).collect(toList()))
+                            .size(pageSize)
+                            .nextCursor(hasNext ? BeerCursor.encode(page.get(page.size() - 1).getId()) : null)
+                            .build();
+                });
+    }
+
+    @Override
+    public Flux<BeerDto> streamBeers(String beerName, BeerStyleEnum beerStyle, Boolean showInventoryOnHand) {
+        Function<Beer, BeerDto> toDto = showInventoryOnHand ? beerMapper::beerToBeerDtoWithInventory : beerMapper::beerToBeerDto;
+
+        // rows are mapped and handed downstream as R2DBC emits them, at the pace the subscriber requests
+        Query inIdOrder = buildQuery(beerName, beerStyle).sort(Sort.by("id"));
+        Flux<Beer> rows = beerShards.isEnabled()
+                ? beerShards.mergeSorted(Comparator.comparing(Beer::getId), shard -> template.select(Beer.class).matching(inIdOrder).all())
+                : beerReadRouting.read(template.select(Beer.class).matching(inIdOrder).all());
+
+        return beerQueryMetrics.timed("stream", rows)
+                .map(toDto);
     }
 
-    @Cacheable(cacheNames = "beerCache", key = "#beerId", condition = "#showInventoryOnHand == false ")
     @Override
     public Mono<BeerDto> getById(Integer beerId, Boolean showInventoryOnHand) {
         if (showInventoryOnHand) {
-            return beerRepository.findById(beerId).map(beerMapper::beerToBeerDtoWithInventory);
+            return beerReadCoalescer.findById(beerId)
+                    .map(beerMapper::beerToBeerDtoWithInventory)
+                    .map(this::withPendingInventory);
+        } else if (beerCatalogSnapshot.servesId(beerId)) {
+            return Mono.justOrEmpty(beerCatalogSnapshot.byId(beerId)).map(beerMapper::beerToBeerDto);
         } else {
-            return beerRepository.findById(beerId).map(beerMapper::beerToBeerDto);
+            return beerCaches.getBeerCache().get(beerId, id -> beerReadCoalescer.findById(id).map(beerMapper::beerToBeerDto));
+        }
+    }
+
+    private BeerDto withPendingInventory(BeerDto beer) {
+        long pending = beerInventoryAccumulator.pendingDelta(beer.getId());
+        if (pending != 0) {
+            int onHand = beer.getQuantityOnHand() != null ? beer.getQuantityOnHand() : 0;
+            beer.setQuantityOnHand((int) (onHand + pending));
         }
+        return beer;
+    }
+
+    @Override
+    public Mono<Void> adjustInventory(Integer beerId, int delta) {
+        // the existence check is served from the beer cache, so hot beers do not touch the table per adjustment
+        return getById(beerId, false)
+                .switchIfEmpty(Mono.error(new NotFoundException()))
+                .doOnNext(beer -> {
+                    beerInventoryAccumulator.adjust(beerId, delta);
+                    beerReservationLedger.adjust(beerId, delta);
+                })
+                .then();
+    }
+
+    @Override
+    public Mono<BeerReservation> reserve(Integer beerId, int quantity) {
+        return beerReservationLedger.reserve(beerId, quantity);
+    }
+
+    @Override
+    public Mono<Void> release(UUID reservationId) {
+        return beerReservationLedger.release(reservationId);
+    }
+
+    @Override
+    public Mono<Void> commitReservation(UUID reservationId) {
+        return beerReservationLedger.commit(reservationId);
     }
 
     @Override
     public Mono<BeerDto> saveNewBeer(BeerDto beerDto) {
-        return beerRepository.save(beerMapper.beerDtoToBeer(beerDto)).map(beerMapper::beerToBeerDto);
+        return beerWriteLimiter.limit(beerQueryMetrics.timed("insert", insert(beerMapper.beerDtoToBeer(beerDto))))
+                .map(beerMapper::beerToBeerDto)
+                .doOnNext(beerCaches::evict)
+                .doOnNext(this::indexForSearch);
     }
 
     @Override
     public Mono<BeerDto> saveNewBeer(Mono<BeerDto> beerDto) {
         return beerDto.map(beerMapper::beerDtoToBeer)
-                .flatMap(beerRepository::save)
-                .map(beerMapper::beerToBeerDto);
+                .flatMap(beer -> beerWriteLimiter.limit(beerQueryMetrics.timed("insert", insert(beer))))
+                .map(beerMapper::beerToBeerDto)
+                .doOnNext(beerCaches::evict)
+                .doOnNext(this::indexForSearch);
+    }
+
+    private void indexForSearch(BeerDto beer) {
+        beerNameSearchIndex.index(beer.getId(), beer.getBeerName(), beer.getUpc());
+    }
+
+    private Mono<Beer> insert(Beer beer) {
+        // stamped like batch inserts, so the catalog snapshot's delta reload sees the row
+        LocalDateTime now = LocalDateTime.now();
+        beer.setCreatedDate(now);
+        beer.setLastModifiedDate(now);
+        return beerShards.isEnabled() ? beerShards.insert(beer) : beerRepository.save(beer);
+    }
+
+    @Override
+    public Flux<BeerDto> saveNewBeerBatch(List<BeerDto> beerDtos) {
+        if (beerDtos.isEmpty()) {
+            return Flux.empty();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Beer> beers = beerDtos.stream()
+                .map(beerMapper::beerDtoToBeer)
+                .peek(beer -> {
+                    beer.setCreatedDate(now);
+                    beer.setLastModifiedDate(now);
+                })
+                .collect(toList());
+
+        Flux<Integer> ids = beerShards.isEnabled() ? insertSharded(beers) : insertBatch(beers, false);
+
+        return beerWriteLimiter.limit(beerQueryMetrics.timed("insert.batch", ids))
+                .zipWithIterable(beers, (id, beer) -> {
+                    beer.setId(id);
+                    return beerMapper.beerToBeerDto(beer);
+                })
+                .collectList()
+                .doOnNext(saved -> {
+                    beerCaches.evict(saved.toArray(new BeerDto[0]));
+                    saved.forEach(this::indexForSearch);
+                })
+                .flatMapIterable(saved -> saved);
+    }
+
+    /**
+     * One batched INSERT in one transaction. Without ids the database generates them and they are emitted in
+     * input order; with ids (sharded mode) the rows-updated counts are emitted instead.
+     */
+    private Flux<Integer> insertBatch(List<Beer> beers, boolean withIds) {
+        return template.getDatabaseClient()
+                .inConnectionMany(connection -> {
+                    Statement statement = withIds
+                            ? connection.createStatement(INSERT_BEER_WITH_ID)
+                            : connection.createStatement(INSERT_BEER).returnGeneratedValues("id");
+                    for (int i = 0; i < beers.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        if (withIds) {
+                            statement.bind(0, beers.get(i).getId());
+                        }
+                        bindInsert(statement, withIds ? 1 : 0, beers.get(i));
+                    }
+                    return Flux.from(statement.execute())
+                            .concatMap(result -> withIds
+                                    ? result.getRowsUpdated()
+                                    : result.map((row, metadata) -> row.get(0, Integer.class)));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Places each beer on its shard and inserts every shard's share as one batch, all shards at once. Each
+     * shard commits on its own, so a failure can leave the other shards' rows in place.
+     */
+    private Flux<Integer> insertSharded(List<Beer> beers) {
+        Map<Integer, List<Beer>> byShard = beers.stream()
+                .collect(groupingBy(beer -> beerShards.placementOf(beer.getUpc()), LinkedHashMap::new, toList()));
+
+        return beerShards.checkUpcsUnique(beers.stream().map(Beer::getUpc).collect(toList()), null)
+                .thenMany(Flux.fromIterable(byShard.entrySet()))
+                .flatMap(shard -> beerShards.nextIds(shard.getKey(), shard.getValue().size())
+                        .flatMap(ids -> {
+                            for (int i = 0; i < ids.size(); i++) {
+                                shard.getValue().get(i).setId(ids.get(i));
+                            }
+                            return beerShards.on(shard.getKey(), insertBatch(shard.getValue(), true).then());
+                        }))
+                .thenMany(Flux.fromIterable(beers).map(Beer::getId));
+    }
+
+    private void bindInsert(Statement statement, int offset, Beer beer) {
+        bind(statement, offset, beer.getBeerName(), String.class);
+        bind(statement, offset + 1, beer.getBeerStyle() != null ? beer.getBeerStyle().name() : null, String.class);
+        bind(statement, offset + 2, beer.getUpc(), String.class);
+        bind(statement, offset + 3, 0L, Long.class);
+        bind(statement, offset + 4, beer.getQuantityOnHand(), Integer.class);
+        bind(statement, offset + 5, beer.getPrice(), BigDecimal.class);
+        bind(statement, offset + 6, beer.getCreatedDate(), LocalDateTime.class);
+        bind(statement, offset + 7, beer.getLastModifiedDate(), LocalDateTime.class);
+    }
+
+    private static void bind(Statement statement, int index, Object value, Class<?> type) {
+        if (value == null) {
+            statement.bindNull(index, type);
+        } else {
+            statement.bind(index, value);
+        }
     }
 
     @Override
     public Mono<BeerDto> updateBeer(Integer beerId, BeerDto beerDto) {
-        return beerRepository.findById(beerId)
-                .defaultIfEmpty(Beer.builder().build())
-                .map(beer -> {
-                    beer.setBeerName(beerDto.getBeerName());
-                    beer.setBeerStyle(BeerStyleEnum.valueOf(beerDto.getBeerStyle()));
-                    beer.setPrice(beerDto.getPrice());
-                    beer.setUpc(beerDto.getUpc());
-                    return beer;
-                }).flatMap(updatedBeer ->{
-                    if (updatedBeer.getId() != null)
-                        return beerRepository.save(updatedBeer);
-
-                    return Mono.just(updatedBeer);
+        Map<String, Parameter> columns = new LinkedHashMap<>();
+        columns.put("beer_name", Parameter.fromOrEmpty(beerDto.getBeerName(), String.class));
+        columns.put("beer_style", Parameter.from(BeerStyleEnum.valueOf(beerDto.getBeerStyle()).name()));
+        columns.put("price", Parameter.fromOrEmpty(beerDto.getPrice(), BigDecimal.class));
+        columns.put("upc", Parameter.fromOrEmpty(beerDto.getUpc(), String.class));
+        columns.put("last_modified_date", Parameter.from(LocalDateTime.now()));
+
+        return updateById(beerId, columns, beerDto);
+    }
+
+    @Override
+    public Mono<BeerDto> patchBeer(Integer beerId, BeerDto beerDto) {
+        Map<String, Parameter> columns = new LinkedHashMap<>();
+        if (beerDto.getBeerName() != null) {
+            columns.put("beer_name", Parameter.from(beerDto.getBeerName()));
+        }
+        if (beerDto.getBeerStyle() != null) {
+            columns.put("beer_style", Parameter.from(BeerStyleEnum.valueOf(beerDto.getBeerStyle()).name()));
+        }
+        if (beerDto.getPrice() != null) {
+            columns.put("price", Parameter.from(beerDto.getPrice()));
+        }
+        if (beerDto.getUpc() != null) {
+            columns.put("upc", Parameter.from(beerDto.getUpc()));
+        }
+        if (beerDto.getQuantityOnHand() != null) {
+            columns.put("quantity_on_hand", Parameter.from(beerDto.getQuantityOnHand()));
+        }
+        columns.put("last_modified_date", Parameter.from(LocalDateTime.now()));
+
+        return updateById(beerId, columns, beerDto)
+                .doOnNext(saved -> {
+                    // an overwritten quantity invalidates the reservation ledger's view of the stock
+                    if (saved.getId() != null && beerDto.getQuantityOnHand() != null) {
+                        beerReservationLedger.forget(beerId);
+                    }
+                });
+    }
+
+    @Override
+    public Mono<BeerDto> modifyBeer(Integer beerId, UnaryOperator<BeerDto> modification) {
+        // every attempt re-reads the row from the primary, bypassing the cache, so the retry works on the winner's state
+        return beerQueryMetrics.timed("find.id", onShardOf(beerId, beerRepository.findById(beerId)))
+                .map(beerMapper::beerToBeerDtoWithInventory)
+                .flatMap(current -> {
+                    BeerDto modified = modification.apply(current);
+                    modified.setVersion(current.getVersion());
+                    return updateBeer(beerId, modified);
                 })
-                .map(beerMapper::beerToBeerDto);
+                .retryWhen(beerUpdateConflicts.retry())
+                .filter(saved -> saved.getId() != null);
+    }
+
+    /**
+     * One UPDATE ... WHERE id = ? that always bumps the version, so writers holding an older version see
+     * the change. With a version in {@code changes} the statement also matches on it, and zero rows then
+     * means either not found or a conflict; only that failure path pays for a second query.
+     */
+    private Mono<BeerDto> updateById(Integer beerId, Map<String, Parameter> columns, BeerDto changes) {
+        Long expectedVersion = changes.getVersion();
+
+        StringBuilder sql = new StringBuilder("UPDATE beer SET ");
+        columns.keySet().forEach(column -> sql.append(column).append(" = :").append(column).append(", "));
+        sql.append("version = COALESCE(version, 0) + 1 WHERE id = :id");
+        if (expectedVersion != null) {
+            sql.append(" AND version = :version");
+        }
+
+        DatabaseClient.GenericExecuteSpec statement = template.getDatabaseClient().sql(sql.toString()).bind("id", beerId);
+        for (Map.Entry<String, Parameter> column : columns.entrySet()) {
+            statement = statement.bind(column.getKey(), column.getValue());
+        }
+        if (expectedVersion != null) {
+            statement = statement.bind("version", expectedVersion);
+        }
+
+        Mono<Integer> update = beerQueryMetrics.timed("update", onShardOf(beerId, statement.fetch().rowsUpdated()));
+        if (beerShards.isEnabled() && changes.getUpc() != null) {
+            update = beerShards.checkUpcsUnique(Collections.singletonList(changes.getUpc()), beerId).then(update);
+        }
+
+        return beerWriteLimiter.limit(update)
+                .flatMap(rows -> {
+                    if (rows > 0) {
+                        beerCaches.evictById(beerId, changes);
+                        beerNameSearchIndex.index(beerId, changes.getBeerName(), changes.getUpc());
+                        return Mono.just(BeerDto.builder()
+                                .id(beerId)
+                                .version(expectedVersion != null ? expectedVersion + 1 : null)
+                                .beerName(changes.getBeerName())
+                                .beerStyle(changes.getBeerStyle())
+                                .upc(changes.getUpc())
+                                .price(changes.getPrice())
+                                .build());
+                    }
+                    if (expectedVersion == null) {
+                        return Mono.just(BeerDto.builder().build());
+                    }
+
+                    return beerQueryMetrics.timed("exists", onShardOf(beerId, template.exists(query(where("id").is(beerId)), Beer.class)))
+                            .flatMap(exists -> exists
+                                    ? Mono.<BeerDto>error(beerUpdateConflicts.conflict(beerId, expectedVersion))
+                                    : Mono.just(BeerDto.builder().build()));
+                });
     }
 
-    @Cacheable(cacheNames = "beerUpcCache")
     @Override
     public Mono<BeerDto> getByUpc(String upc) {
-        return beerRepository.findByUpc(upc).map(beerMapper::beerToBeerDto);
+        if (beerCatalogSnapshot.servesUpc(upc)) {
+            return Mono.justOrEmpty(beerCatalogSnapshot.byUpc(upc)).map(beerMapper::beerToBeerDto);
+        }
+        return beerCaches.getBeerUpcCache().get(upc, key -> beerReadCoalescer.findByUpc(key).map(beerMapper::beerToBeerDto));
     }
 
     @Override
-    public void  deleteBeerById(Integer beerId) {
-        beerRepository.deleteById(beerId).subscribe();
+    public Flux<BeerLookupResult> lookupBeers(List<Integer> ids, List<String> upcs) {
+        // defer, so the cache is consulted at subscription time rather than at assembly
+        return Flux.defer(() -> lookup(ids, upcs));
+    }
+
+    private Flux<BeerLookupResult> lookup(List<Integer> ids, List<String> upcs) {
+        List<Integer> requestedIds = ids != null ? ids : Collections.emptyList();
+        List<String> requestedUpcs = upcs != null ? upcs : Collections.emptyList();
+
+        Map<Integer, BeerDto> byId = new HashMap<>();
+        Map<String, BeerDto> byUpc = new HashMap<>();
+        requestedIds.forEach(id -> putIfPresent(byId, id, beerCaches.getBeerCache().getIfPresent(id)));
+        requestedUpcs.forEach(upc -> putIfPresent(byUpc, upc, beerCaches.getBeerUpcCache().getIfPresent(upc)));
+
+        List<Integer> missingIds = requestedIds.stream().filter(id -> !byId.containsKey(id)).distinct().collect(toList());
+        List<String> missingUpcs = requestedUpcs.stream().filter(upc -> !byUpc.containsKey(upc)).distinct().collect(toList());
+
+        // taken before the selects, so a row a concurrent write has since evicted is not cached again
+        long generation = beerCaches.generation();
+        Flux<BeerDto> loadedById = Flux.fromIterable(missingIds)
+                .buffer(LOOKUP_BATCH_SIZE)
+                .concatMap(batch -> beerQueryMetrics.timed("lookup.id", selectByIds(batch)))
+                .map(beerMapper::beerToBeerDto);
+        Flux<BeerDto> loadedByUpc = Flux.fromIterable(missingUpcs)
+                .buffer(LOOKUP_BATCH_SIZE)
+                .concatMap(batch -> beerQueryMetrics.timed("lookup.upc", selectByUpcs(batch)))
+                .map(beerMapper::beerToBeerDto);
+
+        return Flux.merge(loadedById, loadedByUpc)
+                .doOnNext(beer -> beerCaches.putLoaded(generation, beer))
+                .collectList()
+                .flatMapIterable(loaded -> {
+                    loaded.forEach(beer -> {
+                        byId.putIfAbsent(beer.getId(), beer);
+                        putIfPresent(byUpc, beer.getUpc(), beer);
+                    });
+
+                    List<BeerLookupResult> results = new ArrayList<>(requestedIds.size() + requestedUpcs.size());
+                    requestedIds.forEach(id -> results.add(BeerLookupResult.builder()
+                            .id(id).found(byId.containsKey(id)).beer(byId.get(id)).build()));
+                    requestedUpcs.forEach(upc -> results.add(BeerLookupResult.builder()
+                            .upc(upc).found(byUpc.containsKey(upc)).beer(byUpc.get(upc)).build()));
+                    return results;
+                });
+    }
+
+    private Flux<Beer> selectByIds(List<Integer> ids) {
+        if (beerShards.isEnabled()) {
+            return Flux.fromIterable(beerShards.groupByShard(ids, Function.identity()).entrySet())
+                    .flatMap(shard -> beerShards.on(shard.getKey(),
+                            template.select(Beer.class).matching(query(where("id").in(shard.getValue()))).all()));
+        }
+        return beerReadRouting.readByIds(ids, template.select(Beer.class).matching(query(where("id").in(ids))).all());
+    }
+
+    private Flux<Beer> selectByUpcs(List<String> upcs) {
+        Query byUpc = query(where("upc").in(upcs));
+        if (beerShards.isEnabled()) {
+            return beerShards.scatter(shard -> template.select(Beer.class).matching(byUpc).all());
+        }
+        return beerReadRouting.readByUpcs(upcs, template.select(Beer.class).matching(byUpc).all());
+    }
+
+    private <T> Mono<T> onShardOf(Integer beerId, Mono<T> query) {
+        return beerShards.isEnabled() ? beerShards.on(beerShards.shardOf(beerId), query) : query;
+    }
+
+    private static <K> void putIfPresent(Map<K, BeerDto> beers, K key, BeerDto beer) {
+        if (key != null && beer != null) {
+            beers.put(key, beer);
+        }
     }
 
     @Override
     public Mono<Void> reactiveDeleteBeerById(Integer beerId) {
-        return beerRepository.findById(beerId)
-                .switchIfEmpty(Mono.error(new NotFoundException()))
-                .flatMap(beer -> beerRepository.deleteById(beerId));
+        return deleteById(beerId)
+                .flatMap(rows -> rows == 0 ? Mono.error(new NotFoundException()) : Mono.empty());
+    }
+
+    private Mono<Integer> deleteById(Integer beerId) {
+        return beerWriteLimiter.limit(beerQueryMetrics.timed("delete", onShardOf(beerId, template.delete(Beer.class)
+                        .matching(query(where("id").is(beerId)))
+                        .all())))
+                .doOnNext(rows -> {
+                    if (rows > 0) {
+                        beerCaches.evictById(beerId, null);
+                        beerNameSearchIndex.remove(beerId);
+                        beerReservationLedger.forget(beerId);
+                    }
+                });
     }
 }
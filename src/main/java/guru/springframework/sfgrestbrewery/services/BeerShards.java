@@ -0,0 +1,151 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.ShardRoutingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.r2dbc.query.Criteria;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.data.r2dbc.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.empty;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * Placement and fan-out for the optional sharded mode ({@code sfg.brewery.sharding.shards}).
+ *
+ * A new beer is placed on the shard its UPC hashes to and gets an id from that shard's sequence, which
+ * only yields ids with {@code id % shards == shard}; a beer never moves, so its id alone always finds
+ * it. A UPC changed after the insert no longer hashes to the beer's shard, so UPC lookups fall back to
+ * asking every shard.
+ *
+ * Each shard's unique UPC index only covers its own rows, so writes that set a UPC first ask every shard
+ * whether another beer has it. That check is not atomic with the write: two writers giving the same new
+ * UPC to beers on different shards at the same moment can both pass it.
+ */
+@Component
+public class BeerShards {
+
+    private final R2dbcEntityTemplate template;
+    private final int shards;
+
+    public BeerShards(R2dbcEntityTemplate template, @Value("${sfg.brewery.sharding.shards:}") List<String> shardUrls) {
+        this.template = template;
+        this.shards = (int) shardUrls.stream().filter(StringUtils::hasText).count();
+    }
+
+    public boolean isEnabled() {
+        return shards > 0;
+    }
+
+    public int shardOf(Integer beerId) {
+        return Math.floorMod(beerId, shards);
+    }
+
+    public int placementOf(String upc) {
+        return Math.floorMod(Objects.hashCode(upc), shards);
+    }
+
+    public <T> Mono<T> on(int shard, Mono<T> query) {
+        return ShardRoutingConnectionFactory.onShard(shard, query);
+    }
+
+    public <T> Flux<T> on(int shard, Flux<T> query) {
+        return ShardRoutingConnectionFactory.onShard(shard, query);
+    }
+
+    /**
+     * Runs the query on every shard at once and k-way merges the results, each of which must already be
+     * sorted by {@code order}.
+     */
+    public <T> Flux<T> mergeSorted(Comparator<? super T> order, IntFunction<Flux<T>> query) {
+        List<Flux<T>> perShard = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            perShard.add(on(shard, query.apply(shard)));
+        }
+
+        @SuppressWarnings("unchecked")
+        Flux<T>[] sources = perShard.toArray(new Flux[0]);
+        return Flux.mergeOrdered(order, sources);
+    }
+
+    /**
+     * Runs the query on every shard at once, in no particular order.
+     */
+    public <T> Flux<T> scatter(IntFunction<Flux<T>> query) {
+        return Flux.range(0, shards).flatMap(shard -> on(shard, query.apply(shard)));
+    }
+
+    public Mono<Long> sum(IntFunction<Mono<Long>> count) {
+        return scatter(shard -> count.apply(shard).flux()).reduce(0L, Long::sum);
+    }
+
+    public <K> Map<Integer, List<K>> groupByShard(Collection<K> keys, Function<K, Integer> beerId) {
+        return keys.stream().collect(groupingBy(key -> shardOf(beerId.apply(key)), LinkedHashMap::new, toList()));
+    }
+
+    /**
+     * @return {@code count} new ids for beers placed on {@code shard}
+     */
+    public Mono<List<Integer>> nextIds(int shard, int count) {
+        return on(shard, template.getDatabaseClient()
+                .sql("SELECT NEXT VALUE FOR " + ShardRoutingConnectionFactory.ID_SEQUENCE + " FROM SYSTEM_RANGE(1, :count)")
+                .bind("count", count)
+                .map(row -> row.get(0, Number.class).intValue())
+                .all()
+                .collectList());
+    }
+
+    /**
+     * Fails with a {@link DataIntegrityViolationException}, like the unique index would, if a beer other
+     * than {@code beerId} (null for new beers) has any of the UPCs on any shard.
+     */
+    public Mono<Void> checkUpcsUnique(Collection<String> upcs, Integer beerId) {
+        List<String> distinct = upcs.stream().filter(Objects::nonNull).distinct().collect(toList());
+        if (distinct.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Criteria taken = where("upc").in(distinct);
+        Criteria byOthers = beerId != null ? taken.and("id").not(beerId) : taken;
+        return scatter(shard -> template.exists(query(byOthers), Beer.class).flux())
+                .any(Boolean::booleanValue)
+                .flatMap(exists -> exists
+                        ? Mono.error(new DataIntegrityViolationException("UPC already taken on another shard: " + distinct))
+                        : Mono.empty());
+    }
+
+    /**
+     * Inserts a new beer on its shard, under an id from that shard's sequence.
+     */
+    public Mono<Beer> insert(Beer beer) {
+        int shard = placementOf(beer.getUpc());
+        return checkUpcsUnique(Collections.singletonList(beer.getUpc()), null)
+                .then(nextIds(shard, 1))
+                .flatMap(ids -> {
+                    beer.setId(ids.get(0));
+                    return on(shard, template.insert(beer));
+                });
+    }
+
+    public Mono<Long> countAll() {
+        return sum(shard -> template.count(empty(), Beer.class));
+    }
+}
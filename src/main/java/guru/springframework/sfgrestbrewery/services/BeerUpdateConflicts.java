@@ -0,0 +1,65 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optimistic-locking conflicts on beer updates: the exception raised when a versioned update loses,
+ * the backoff policy for read-modify-write loops, and the counters behind the conflict rate.
+ */
+@Component
+public class BeerUpdateConflicts implements MeterBinder {
+
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public BeerUpdateConflicts(@Value("${sfg.brewery.optimistic-lock.max-retries:5}") int maxRetries,
+                               @Value("${sfg.brewery.optimistic-lock.min-backoff:10ms}") Duration minBackoff) {
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+    }
+
+    public OptimisticLockingFailureException conflict(Integer beerId, Long expectedVersion) {
+        conflicts.increment();
+        return new OptimisticLockingFailureException("Beer " + beerId + " is no longer at version " + expectedVersion);
+    }
+
+    /**
+     * Retries only conflicts, with jittered exponential backoff so racing writers spread out;
+     * the last conflict is rethrown once the retries are used up.
+     */
+    public Retry retry() {
+        return Retry.backoff(maxRetries, minBackoff)
+                .jitter(0.5)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .doBeforeRetry(signal -> retries.increment())
+                .onRetryExhaustedThrow((spec, signal) -> {
+                    exhausted.increment();
+                    return signal.failure();
+                });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("beer.update.conflicts", conflicts, LongAdder::sum)
+                .description("Versioned beer updates rejected because the beer had changed")
+                .register(registry);
+        FunctionCounter.builder("beer.update.retries", retries, LongAdder::sum)
+                .description("Read-modify-write attempts repeated after a conflict")
+                .register(registry);
+        FunctionCounter.builder("beer.update.retries.exhausted", exhausted, LongAdder::sum)
+                .description("Read-modify-write updates that still conflicted after the last retry")
+                .register(registry);
+    }
+}
@@ -0,0 +1,70 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of beer writes in flight. A write over the limit fails fast with 503 rather than
+ * queueing behind the connection pool; a permit is returned when the write completes, fails or is cancelled.
+ */
+@Component
+public class BeerWriteLimiter implements MeterBinder {
+
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public BeerWriteLimiter(@Value("${sfg.brewery.writes.max-in-flight:64}") int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public <T> Mono<T> limit(Mono<T> write) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(tooManyWrites());
+            }
+            return write.doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    public <T> Flux<T> limit(Flux<T> write) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(tooManyWrites());
+            }
+            return write.doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    private boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private ResponseStatusException tooManyWrites() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent beer writes");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("beer.writes.in.flight", inFlight, AtomicInteger::get)
+                .register(registry);
+        FunctionCounter.builder("beer.writes.rejected", rejected, LongAdder::sum)
+                .register(registry);
+    }
+}
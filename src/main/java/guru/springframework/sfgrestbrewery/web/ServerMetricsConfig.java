@@ -0,0 +1,45 @@
+package guru.springframework.sfgrestbrewery.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import java.util.regex.Pattern;
+
+/**
+ * Transport and scheduler metrics, off by default: they add per-connection and per-task bookkeeping.
+ * With them on, {@code http.server.requests} (handler time) can be read against Reactor Netty's
+ * {@code reactor.netty.http.server.*} timers (request read, response written) and the {@code beer.query}
+ * timers (database) to see which layer a slow response spends its time in.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sfg.brewery.metrics.reactor.enabled", havingValue = "true")
+public class ServerMetricsConfig {
+
+    private static final Pattern QUERY = Pattern.compile("\\?.*$");
+    private static final Pattern UPC = Pattern.compile("(/beerUpc)/[^/]+");
+    private static final Pattern ID = Pattern.compile("/(\\d+|[0-9a-fA-F-]{36})(?=/|$)");
+
+    @PostConstruct
+    void enableSchedulerMetrics() {
+        // executor gauges for the Reactor schedulers: active and queued tasks, completion times
+        Schedulers.enableMetrics();
+    }
+
+    @Bean
+    NettyServerCustomizer nettyMetricsCustomizer() {
+        return httpServer -> httpServer.metrics(true, ServerMetricsConfig::uriTemplate);
+    }
+
+    /**
+     * Collapses ids, reservation ids and UPCs in a request path so the uri tag stays low-cardinality.
+     */
+    static String uriTemplate(String uri) {
+        String path = QUERY.matcher(uri).replaceFirst("");
+        path = UPC.matcher(path).replaceAll("$1/{upc}");
+        return ID.matcher(path).replaceAll("/{id}");
+    }
+}
@@ -1,20 +1,29 @@
 package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursor;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursorPage;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerETag;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebInputException;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.function.Function;
 
 /**
  * Created by jt on 2019-04-20.
@@ -30,11 +39,12 @@ public class BeerController {
     private final BeerService beerService;
 
     @GetMapping(produces = {"application/json"}, path = "beer")
-    public ResponseEntity<Mono<BeerPagedList>> listBeers(@RequestParam(value = "pageNumber", required = false) Integer pageNumber,
+    public Mono<ResponseEntity<BeerPagedList>> listBeers(@RequestParam(value = "pageNumber", required = false) Integer pageNumber,
                                                          @RequestParam(value = "pageSize", required = false) Integer pageSize,
                                                          @RequestParam(value = "beerName", required = false) String beerName,
                                                          @RequestParam(value = "beerStyle", required = false) BeerStyleEnum beerStyle,
-                                                         @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand) {
+                                                         @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand,
+                                                         @RequestParam(value = "q", required = false) String q) {
 
         if (showInventoryOnHand == null) {
             showInventoryOnHand = false;
@@ -48,7 +58,42 @@ public class BeerController {
             pageSize = DEFAULT_PAGE_SIZE;
         }
 
-        return ResponseEntity.ok(beerService.listBeers(beerName, beerStyle, PageRequest.of(pageNumber, pageSize), showInventoryOnHand));
+        if (StringUtils.hasText(q)) {
+            if (StringUtils.hasText(beerName) || beerStyle != null || showInventoryOnHand) {
+                throw new ServerWebInputException("q cannot be combined with beerName, beerStyle or showInventoryOnHand");
+            }
+            return beerService.searchBeers(q, PageRequest.of(pageNumber, pageSize))
+                    .map(page -> okTagged(page, BeerETag.of(page), null));
+        }
+
+        boolean withInventory = showInventoryOnHand;
+        return beerService.listBeers(beerName, beerStyle, PageRequest.of(pageNumber, pageSize), showInventoryOnHand)
+                .map(page -> withInventory ? ResponseEntity.ok(page) : okTagged(page, BeerETag.of(page), null));
+    }
+
+    @GetMapping(produces = {"application/json"}, path = "beer", params = "after")
+    public ResponseEntity<Mono<BeerCursorPage>> listBeersAfter(@RequestParam("after") String after,
+                                                               @RequestParam(value = "pageSize", required = false) Integer pageSize,
+                                                               @RequestParam(value = "beerName", required = false) String beerName,
+                                                               @RequestParam(value = "beerStyle", required = false) BeerStyleEnum beerStyle,
+                                                               @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand) {
+
+        if (showInventoryOnHand == null) {
+            showInventoryOnHand = false;
+        }
+
+        if (pageSize == null || pageSize < 1) {
+            pageSize = DEFAULT_PAGE_SIZE;
+        }
+
+        int afterId;
+        try {
+            afterId = BeerCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Invalid cursor: " + after);
+        }
+
+        return ResponseEntity.ok(beerService.listBeersAfter(beerName, beerStyle, afterId, pageSize, showInventoryOnHand));
     }
 
     @ExceptionHandler
@@ -57,56 +102,108 @@ public class BeerController {
     }
 
     @GetMapping("beer/{beerId}")
-    public ResponseEntity<Mono<BeerDto>> getBeerById(@PathVariable("beerId") Integer beerId,
+    public Mono<ResponseEntity<BeerDto>> getBeerById(@PathVariable("beerId") Integer beerId,
                                                      @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand) {
         if (showInventoryOnHand == null) {
             showInventoryOnHand = false;
         }
 
-        return ResponseEntity.ok(beerService.getById(beerId, showInventoryOnHand)
-                .defaultIfEmpty(BeerDto.builder().build())
-                .doOnNext(beerDto -> {
-                    if (beerDto.getId() == null)
-                        throw new NotFoundException();
-                }));
+        boolean withInventory = showInventoryOnHand;
+        return beerService.getById(beerId, showInventoryOnHand)
+                .switchIfEmpty(Mono.error(new NotFoundException()))
+                .map(beerDto -> withInventory ? ResponseEntity.ok(beerDto) : okTagged(beerDto, BeerETag.of(beerDto), lastModified(beerDto)));
     }
 
     @GetMapping("beerUpc/{upc}")
-    public ResponseEntity<Mono<BeerDto>> getBeerByUpc(@PathVariable("upc") String upc) {
-        return ResponseEntity.ok(beerService.getByUpc(upc));
+    public Mono<ResponseEntity<BeerDto>> getBeerByUpc(@PathVariable("upc") String upc) {
+        return beerService.getByUpc(upc)
+                .map(beerDto -> okTagged(beerDto, BeerETag.of(beerDto), lastModified(beerDto)))
+                .defaultIfEmpty(ResponseEntity.ok().<BeerDto>build());
+    }
+
+    /**
+     * On a GET, WebFlux compares these validators with If-None-Match / If-Modified-Since and answers 304
+     * without writing the body; with a cached beer or page that is no query and no serialization.
+     */
+    private static <T> ResponseEntity<T> okTagged(T body, String eTag, Instant lastModified) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        if (lastModified != null) {
+            response.lastModified(lastModified);
+        }
+        return response.body(body);
+    }
+
+    private static Instant lastModified(BeerDto beerDto) {
+        return beerDto.getLastUpdatedDate() != null ? beerDto.getLastUpdatedDate().atZone(ZoneId.systemDefault()).toInstant() : null;
     }
 
     @PostMapping(path = "beer")
     public Mono<ResponseEntity<Void>> saveNewBeer(@RequestBody @Validated BeerDto beerDto) {
+        return beerService.saveNewBeer(beerDto)
+                .map(savedBeer -> ResponseEntity
+                        .created(UriComponentsBuilder
+                                .fromHttpUrl("http://api.springframework.guru/api/v1/beer/" + savedBeer.getId())
+                                .build().toUri())
+                        .<Void>build());
+    }
 
-        AtomicInteger atomicInteger = new AtomicInteger();
+    @PutMapping("beer/{beerId}")
+    public Mono<ResponseEntity<Void>> updateBeerById(@PathVariable("beerId") Integer beerId,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestBody @Validated BeerDto beerDto) {
+        return conditionalUpdate(beerId, ifMatch, beerDto, dto -> beerService.updateBeer(beerId, dto));
+    }
 
-        beerService.saveNewBeer(beerDto).subscribe(savedBeer -> atomicInteger.set(savedBeer.getId()));
+    @PatchMapping("beer/{beerId}")
+    public Mono<ResponseEntity<Void>> patchBeerById(@PathVariable("beerId") Integer beerId,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                    @RequestBody BeerDto beerDto) {
+        if (beerDto.getBeerStyle() != null && !isBeerStyle(beerDto.getBeerStyle())) {
+            throw new ServerWebInputException("Invalid beer style: " + beerDto.getBeerStyle());
+        }
 
-        return Mono.just(ResponseEntity
-                .created(UriComponentsBuilder
-                        .fromHttpUrl("http://api.springframework.guru/api/v1/beer/" + atomicInteger.get())
-                        .build().toUri())
-                .build());
+        return conditionalUpdate(beerId, ifMatch, beerDto, dto -> beerService.patchBeer(beerId, dto));
     }
 
-    @PutMapping("beer/{beerId}")
-    public Mono<ResponseEntity<Void>> updateBeerById(@PathVariable("beerId") Integer beerId, @RequestBody @Validated BeerDto beerDto) {
-        AtomicBoolean atomicBoolean = new AtomicBoolean(false);
-        beerService.updateBeer(beerId, beerDto).subscribe(saved -> {
-            if (saved.getId() != null)
-                atomicBoolean.set(true);
-        });
-        if (atomicBoolean.get())
-            return Mono.just(ResponseEntity.noContent().build());
-        else
-            return Mono.just(ResponseEntity.notFound().build());
+    /**
+     * An If-Match tag takes precedence over the version in the body. Losing to a concurrent update is
+     * 412 when the client sent If-Match, and 409 (see {@link MvcExceptionHandler}) for a body version.
+     */
+    private Mono<ResponseEntity<Void>> conditionalUpdate(Integer beerId, String ifMatch, BeerDto beerDto, Function<BeerDto, Mono<BeerDto>> update) {
+        boolean precondition = ifMatch != null && !"*".equals(ifMatch.trim());
+        if (precondition) {
+            try {
+                beerDto.setVersion(BeerETag.parse(ifMatch.trim(), beerId));
+            } catch (IllegalArgumentException e) {
+                return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).<Void>build());
+            }
+        }
+
+        return update.apply(beerDto)
+                .map(saved -> {
+                    if (saved.getId() == null) {
+                        return ResponseEntity.notFound().<Void>build();
+                    }
+                    return saved.getVersion() != null
+                            ? ResponseEntity.noContent().eTag(BeerETag.of(saved.getId(), saved.getVersion())).<Void>build()
+                            : ResponseEntity.noContent().<Void>build();
+                })
+                .onErrorResume(OptimisticLockingFailureException.class, e -> precondition
+                        ? Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).<Void>build())
+                        : Mono.<ResponseEntity<Void>>error(e));
+    }
+
+    private static boolean isBeerStyle(String beerStyle) {
+        return Arrays.stream(BeerStyleEnum.values()).anyMatch(style -> style.name().equals(beerStyle));
     }
 
     @DeleteMapping("beer/{beerId}")
     public Mono<ResponseEntity<Void>> deleteBeerById(@PathVariable("beerId") Integer beerId) {
-        beerService.deleteBeerById(beerId);
-        return Mono.just(ResponseEntity.ok().build());
+        return beerService.reactiveDeleteBeerById(beerId)
+                .thenReturn(ResponseEntity.ok().<Void>build());
     }
 
 }
@@ -0,0 +1,11 @@
+package guru.springframework.sfgrestbrewery.web.controller;
+
+/**
+ * A reservation asked for more than is left of a beer.
+ */
+public class InsufficientInventoryException extends RuntimeException {
+
+    public InsufficientInventoryException(Integer beerId, int quantity) {
+        super("Cannot reserve " + quantity + " of beer " + beerId);
+    }
+}
@@ -1,10 +1,24 @@
 package guru.springframework.sfgrestbrewery.web.functional;
 
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
 import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerBulkResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerETag;
+import guru.springframework.sfgrestbrewery.web.model.BeerInventoryAdjustment;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupRequest;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
@@ -12,52 +26,250 @@ import org.springframework.validation.Validator;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class BeerHandlerV2 {
+    private static final int MAX_LOOKUP_KEYS = 1000;
+
     private final BeerService beerService;
     private final Validator validator;
 
+    @Value("${sfg.brewery.bulk.batch-size:500}")
+    private int bulkBatchSize;
+
+    public Mono<ServerResponse> streamBeers(ServerRequest request) {
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(streamBeersFor(request), BeerDto.class);
+    }
+
+    public Mono<ServerResponse> streamBeerEvents(ServerRequest request) {
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(streamBeersFor(request), BeerDto.class);
+    }
+
+    private Flux<BeerDto> streamBeersFor(ServerRequest request) {
+        String beerName = request.queryParam("beerName").orElse(null);
+        Boolean showInventory = Boolean.valueOf(request.queryParam("showInventoryOnHand").orElse("false"));
+        BeerStyleEnum beerStyle;
+        try {
+            beerStyle = request.queryParam("beerStyle").map(BeerStyleEnum::valueOf).orElse(null);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Invalid beer style: " + request.queryParam("beerStyle").get());
+        }
+
+        return beerService.streamBeers(beerName, beerStyle, showInventory);
+    }
+
     public Mono<ServerResponse> getBeerById(ServerRequest request) {
         Integer beerId = Integer.valueOf(request.pathVariable("beerId"));
         Boolean shoInventory = Boolean.valueOf(request.queryParam("showInventoryOnHand").orElse("false"));
         return beerService.getById(beerId, shoInventory)
-                .flatMap(beerDto -> ServerResponse.ok().bodyValue(beerDto))
+                .flatMap(beerDto -> shoInventory ? ServerResponse.ok().bodyValue(beerDto) : okTagged(request, beerDto))
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
     public Mono<ServerResponse> getBeerByUpc(ServerRequest request) {
         String upc = request.pathVariable("upc");
         return beerService.getByUpc(upc)
-                .flatMap(beerDto -> ServerResponse.ok().bodyValue(beerDto))
+                .flatMap(beerDto -> okTagged(request, beerDto))
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
+    /**
+     * Answers 304 without encoding the beer when If-None-Match / If-Modified-Since still match it.
+     */
+    private Mono<ServerResponse> okTagged(ServerRequest request, BeerDto beerDto) {
+        String eTag = BeerETag.of(beerDto);
+        Instant lastModified = beerDto.getLastUpdatedDate() != null
+                ? beerDto.getLastUpdatedDate().atZone(ZoneId.systemDefault()).toInstant() : null;
+
+        boolean notModified = request.exchange()
+                .checkNotModified(eTag, lastModified != null ? lastModified : Instant.ofEpochMilli(-1));
+
+        ServerResponse.BodyBuilder response = notModified ? ServerResponse.status(HttpStatus.NOT_MODIFIED) : ServerResponse.ok();
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        if (lastModified != null) {
+            response.lastModified(lastModified);
+        }
+        return notModified ? response.build() : response.bodyValue(beerDto);
+    }
+
+    public Mono<ServerResponse> lookupBeers(ServerRequest request) {
+        return request.bodyToMono(BeerLookupRequest.class)
+                .doOnNext(lookup -> {
+                    int keys = (lookup.getIds() != null ? lookup.getIds().size() : 0)
+                            + (lookup.getUpcs() != null ? lookup.getUpcs().size() : 0);
+                    if (keys > MAX_LOOKUP_KEYS)
+                        throw new ServerWebInputException("At most " + MAX_LOOKUP_KEYS + " ids and upcs per lookup");
+                })
+                .flatMap(lookup -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(beerService.lookupBeers(lookup.getIds(), lookup.getUpcs()), BeerLookupResult.class));
+    }
+
     public Mono<ServerResponse> saveBeer(ServerRequest request) {
         Mono<BeerDto> beerDtoMono = request.bodyToMono(BeerDto.class).doOnNext(this::validate);
         return beerService.saveNewBeer(beerDtoMono)
                 .flatMap(beerDto -> ServerResponse
                         .ok().header("location: " + BeerRouterConfig.BEER_V2_PATH + "/" + beerDto.getId()).build())
-                ;
+                .onErrorResume(DataIntegrityViolationException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> saveBeers(ServerRequest request) {
+        Flux<BeerBulkResult> results = request.bodyToFlux(BeerDto.class)
+                .index()
+                .buffer(bulkBatchSize)
+                .concatMap(this::saveBatch);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, BeerBulkResult.class);
+    }
+
+    private Flux<BeerBulkResult> saveBatch(List<Tuple2<Long, BeerDto>> batch) {
+        List<BeerBulkResult> invalid = new ArrayList<>();
+        List<Long> validIndexes = new ArrayList<>();
+        List<BeerDto> valid = new ArrayList<>();
+
+        batch.forEach(item -> {
+            Errors errors = validationErrors(item.getT2());
+            if (errors.hasErrors()) {
+                invalid.add(BeerBulkResult.builder()
+                        .index(item.getT1())
+                        .status(BeerBulkResult.Status.INVALID)
+                        .errors(errors.getFieldErrors().stream()
+                                .map(error -> error.getField() + " : " + error.getDefaultMessage())
+                                .collect(toList()))
+                        .build());
+            } else {
+                validIndexes.add(item.getT1());
+                valid.add(item.getT2());
+            }
+        });
+
+        Flux<BeerBulkResult> created = beerService.saveNewBeerBatch(valid)
+                .zipWithIterable(validIndexes, (saved, index) -> BeerBulkResult.builder()
+                        .index(index)
+                        .status(BeerBulkResult.Status.CREATED)
+                        .id(saved.getId())
+                        .build())
+                .onErrorResume(e -> {
+                    log.debug("Bulk batch of {} beers failed", valid.size(), e);
+                    return Flux.fromIterable(validIndexes).map(index -> BeerBulkResult.builder()
+                            .index(index)
+                            .status(BeerBulkResult.Status.FAILED)
+                            .errors(List.of(String.valueOf(e.getMessage())))
+                            .build());
+                });
+
+        return Flux.concat(Flux.fromIterable(invalid), created)
+                .sort(Comparator.comparingLong(BeerBulkResult::getIndex));
     }
 
     public Mono<ServerResponse> updateBeer(ServerRequest request) {
         Integer beerId = Integer.valueOf(request.pathVariable("beerId"));
-        Mono<BeerDto> beerDtoMono = request.bodyToMono(BeerDto.class).doOnNext(this::validate);
-        return beerDtoMono
-                .flatMap(beerDto -> beerService.updateBeer(beerId, beerDto))
-                .flatMap(beerDto -> {
-                    if (beerDto.getId() != null) {
-                        log.debug("Saved Beer Id: {}", beerDto.getId());
-                        return ServerResponse.noContent().build();
-                    } else {
-                        log.debug("Beer Id: {} not found", beerId);
+        return request.bodyToMono(BeerDto.class)
+                .doOnNext(this::validate)
+                .flatMap(beerDto -> conditionalUpdate(request, beerDto, dto -> beerService.updateBeer(beerId, dto)));
+    }
+
+    public Mono<ServerResponse> patchBeer(ServerRequest request) {
+        Integer beerId = Integer.valueOf(request.pathVariable("beerId"));
+        return request.bodyToMono(BeerDto.class)
+                .flatMap(beerDto -> conditionalUpdate(request, beerDto, dto -> beerService.patchBeer(beerId, dto)))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    /**
+     * If-Match takes precedence over the version in the body; a lost race is 412 with If-Match and 409 without.
+     */
+    private Mono<ServerResponse> conditionalUpdate(ServerRequest request, BeerDto beerDto, Function<BeerDto, Mono<BeerDto>> update) {
+        String ifMatch = request.headers().asHttpHeaders().getFirst(HttpHeaders.IF_MATCH);
+        boolean precondition = ifMatch != null && !"*".equals(ifMatch.trim());
+        if (precondition) {
+            try {
+                beerDto.setVersion(BeerETag.parse(ifMatch.trim(), Integer.valueOf(request.pathVariable("beerId"))));
+            } catch (IllegalArgumentException e) {
+                return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+
+        return update.apply(beerDto)
+                .flatMap(saved -> {
+                    if (saved.getId() == null) {
+                        log.debug("Beer Id: {} not found", request.pathVariable("beerId"));
                         return ServerResponse.notFound().build();
                     }
-                });
+                    log.debug("Saved Beer Id: {}", saved.getId());
+                    return saved.getVersion() != null
+                            ? ServerResponse.noContent().eTag(BeerETag.of(saved.getId(), saved.getVersion())).build()
+                            : ServerResponse.noContent().build();
+                })
+                .onErrorResume(OptimisticLockingFailureException.class, e -> ServerResponse
+                        .status(precondition ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> adjustInventory(ServerRequest request) {
+        Integer beerId = Integer.valueOf(request.pathVariable("beerId"));
+        return request.bodyToMono(BeerInventoryAdjustment.class)
+                .doOnNext(adjustment -> {
+                    if (adjustment.getDelta() == null)
+                        throw new ServerWebInputException("delta is required");
+                })
+                .flatMap(adjustment -> beerService.adjustInventory(beerId, adjustment.getDelta()))
+                .then(ServerResponse.accepted().build())
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> reserve(ServerRequest request) {
+        Integer beerId = Integer.valueOf(request.pathVariable("beerId"));
+        return request.bodyToMono(BeerReservation.class)
+                .doOnNext(reservation -> {
+                    if (reservation.getQuantity() == null || reservation.getQuantity() < 1)
+                        throw new ServerWebInputException("quantity must be positive");
+                })
+                .flatMap(reservation -> beerService.reserve(beerId, reservation.getQuantity()))
+                .flatMap(reservation -> ServerResponse.status(HttpStatus.CREATED).bodyValue(reservation))
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build())
+                .onErrorResume(InsufficientInventoryException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> releaseReservation(ServerRequest request) {
+        return reservationId(request)
+                .flatMap(beerService::release)
+                .then(ServerResponse.noContent().build())
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> commitReservation(ServerRequest request) {
+        return reservationId(request)
+                .flatMap(beerService::commitReservation)
+                .then(ServerResponse.noContent().build())
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build());
+    }
+
+    private Mono<UUID> reservationId(ServerRequest request) {
+        return Mono.fromCallable(() -> UUID.fromString(request.pathVariable("reservationId")))
+                .onErrorMap(IllegalArgumentException.class, e -> new NotFoundException());
     }
 
     public Mono<ServerResponse> deleteBeer(ServerRequest request) {
@@ -68,9 +280,14 @@ public class BeerHandlerV2 {
     }
 
     private void validate(BeerDto beerDto) {
-        Errors errors = new BeanPropertyBindingResult(beerDto, "beerDto");
-        validator.validate(beerDto, errors);
+        Errors errors = validationErrors(beerDto);
         if (errors.hasErrors())
             throw new ServerWebInputException(errors.toString());
     }
+
+    private Errors validationErrors(BeerDto beerDto) {
+        Errors errors = new BeanPropertyBindingResult(beerDto, "beerDto");
+        validator.validate(beerDto, errors);
+        return errors;
+    }
 }
@@ -7,6 +7,7 @@ import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
 
@@ -18,10 +19,19 @@ public class BeerRouterConfig {
     @Bean
     public RouterFunction<ServerResponse> beerByIdRouterV2(BeerHandlerV2 beerHandler) {
         return route()
+                .GET(BEER_V2_PATH, accept(MediaType.APPLICATION_NDJSON), beerHandler::streamBeers)
+                .GET(BEER_V2_PATH, accept(MediaType.TEXT_EVENT_STREAM), beerHandler::streamBeerEvents)
                 .GET(BEER_V2_PATH + "/{beerId}", accept(MediaType.APPLICATION_JSON), beerHandler::getBeerById)
                 .GET(BEER_UPC_V2_PATH + "/{upc}", accept(MediaType.APPLICATION_JSON), beerHandler::getBeerByUpc)
                 .POST(BEER_V2_PATH, accept(MediaType.APPLICATION_JSON), beerHandler::saveBeer)
+                .POST(BEER_V2_PATH + "/lookup", accept(MediaType.APPLICATION_JSON), beerHandler::lookupBeers)
+                .POST(BEER_V2_PATH + "/bulk", contentType(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON), beerHandler::saveBeers)
+                .POST(BEER_V2_PATH + "/{beerId}/reservations", accept(MediaType.APPLICATION_JSON), beerHandler::reserve)
+                .POST(BEER_V2_PATH + "/reservations/{reservationId}/commit", accept(MediaType.APPLICATION_JSON), beerHandler::commitReservation)
+                .DELETE(BEER_V2_PATH + "/reservations/{reservationId}", accept(MediaType.APPLICATION_JSON), beerHandler::releaseReservation)
+                .POST(BEER_V2_PATH + "/{beerId}/inventory/adjust", accept(MediaType.APPLICATION_JSON), beerHandler::adjustInventory)
                 .PUT(BEER_V2_PATH + "/{beerId}", accept(MediaType.APPLICATION_JSON), beerHandler::updateBeer)
+                .PATCH(BEER_V2_PATH + "/{beerId}", accept(MediaType.APPLICATION_JSON), beerHandler::patchBeer)
                 .DELETE(BEER_V2_PATH + "/{beerId}", accept(MediaType.APPLICATION_JSON), beerHandler::deleteBeer)
                 .build();
     }
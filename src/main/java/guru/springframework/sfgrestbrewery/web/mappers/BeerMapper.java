@@ -12,9 +12,12 @@ import org.mapstruct.Mapping;
 public interface BeerMapper {
 
     @Mapping(target = "quantityOnHand", ignore = true)
+    @Mapping(source = "lastModifiedDate", target = "lastUpdatedDate")
     BeerDto beerToBeerDto(Beer beer);
 
+    @Mapping(source = "lastModifiedDate", target = "lastUpdatedDate")
     BeerDto beerToBeerDtoWithInventory(Beer beer);
 
+    @Mapping(target = "version", ignore = true)
     Beer beerDtoToBeer(BeerDto dto);
 }
@@ -0,0 +1,30 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of one item of a bulk beer upload. {@code index} is the position of the item in the request body.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerBulkResult {
+
+    public enum Status {
+        CREATED, INVALID, FAILED
+    }
+
+    private long index;
+
+    private Status status;
+
+    private Integer id;
+
+    private List<String> errors;
+}
@@ -0,0 +1,38 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes the opaque {@code after} token of keyset pagination. The token carries the id of the last beer
+ * of the previous page; clients must treat it as opaque.
+ */
+public final class BeerCursor {
+
+    private static final String PREFIX = "id:";
+
+    private BeerCursor() {
+    }
+
+    public static String encode(Integer lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the id to seek after, 0 for an empty token (first page)
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode(Integer)}
+     */
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        return Integer.parseInt(decoded.substring(PREFIX.length()));
+    }
+}
@@ -0,0 +1,25 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A keyset page of beers. {@code nextCursor} is passed back as {@code after} to fetch the following page,
+ * and is null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerCursorPage {
+
+    private List<BeerDto> content;
+
+    private int size;
+
+    private String nextCursor;
+}
@@ -24,6 +24,11 @@ public class BeerDto {
     @Null
     private Integer id;
 
+    /**
+     * The version read; sent back on an update, the update only applies if the beer is still at this version.
+     */
+    private Long version;
+
     @NotBlank
     private String beerName;
 
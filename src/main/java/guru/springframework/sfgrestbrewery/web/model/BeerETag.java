@@ -0,0 +1,58 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import java.util.Objects;
+
+/**
+ * Strong entity tags for beers and beer pages. A beer's tag is its id plus its optimistic-locking version;
+ * a page's tag hashes the ids and versions on it together with its position and total.
+ *
+ * Inventory changes do not bump the version, so responses that include {@code quantityOnHand} get no tag.
+ */
+public final class BeerETag {
+
+    private BeerETag() {
+    }
+
+    public static String of(Integer beerId, Long version) {
+        return "\"" + beerId + "-" + version + "\"";
+    }
+
+    /**
+     * @return null if the beer has no version to tag
+     */
+    public static String of(BeerDto beer) {
+        return beer.getId() != null && beer.getVersion() != null ? of(beer.getId(), beer.getVersion()) : null;
+    }
+
+    /**
+     * @return null if any beer on the page has no version
+     */
+    public static String of(BeerPagedList page) {
+        long hash = 17;
+        for (BeerDto beer : page.getContent()) {
+            if (beer.getVersion() == null) {
+                return null;
+            }
+            hash = 31 * hash + Objects.hashCode(beer.getId());
+            hash = 31 * hash + beer.getVersion();
+        }
+        hash = 31 * hash + page.getNumber();
+        hash = 31 * hash + page.getSize();
+        hash = 31 * hash + page.getTotalElements();
+
+        return "\"page-" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * @return the version carried by a tag produced by {@link #of(Integer, Long)} for this beer
+     * @throws IllegalArgumentException if the tag is weak, malformed or belongs to another beer
+     */
+    public static Long parse(String eTag, Integer beerId) {
+        String prefix = "\"" + beerId + "-";
+        if (eTag == null || !eTag.startsWith(prefix) || !eTag.endsWith("\"") || eTag.length() <= prefix.length() + 1) {
+            throw new IllegalArgumentException("Invalid entity tag: " + eTag);
+        }
+
+        return Long.valueOf(eTag.substring(prefix.length(), eTag.length() - 1));
+    }
+}
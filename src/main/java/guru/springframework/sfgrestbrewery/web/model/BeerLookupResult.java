@@ -0,0 +1,25 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one key of a bulk lookup. Exactly one of {@code id} or {@code upc} echoes the requested key;
+ * {@code beer} is null when {@code found} is false.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerLookupResult {
+
+    private Integer id;
+
+    private String upc;
+
+    private boolean found;
+
+    private BeerDto beer;
+}
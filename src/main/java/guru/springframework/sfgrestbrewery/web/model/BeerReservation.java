@@ -0,0 +1,27 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Stock held for a checkout until it is committed, released or expires. Requests only carry the quantity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerReservation {
+
+    private UUID id;
+
+    private Integer beerId;
+
+    private Integer quantity;
+
+    private OffsetDateTime expiresAt;
+}
@@ -9,4 +9,8 @@ CREATE TABLE  if NOT EXISTS beer
     price decimal,
     created_date timestamp,
     last_modified_date timestamp
-);
\ No newline at end of file
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS beer_upc_idx ON beer (upc);
+CREATE INDEX IF NOT EXISTS beer_style_name_idx ON beer (beer_style, beer_name);
+CREATE INDEX IF NOT EXISTS beer_name_idx ON beer (beer_name);
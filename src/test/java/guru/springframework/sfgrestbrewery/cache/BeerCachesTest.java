@@ -0,0 +1,28 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerCachesTest {
+
+    BeerCaches beerCaches = new BeerCaches(100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1));
+
+    @Test
+    void rowReadBeforeAnEvictionIsNotCached() {
+        BeerDto beer = BeerDto.builder().id(1).upc("0631234200036").beerName("Mango Bobs").build();
+
+        long generation = beerCaches.generation();
+        beerCaches.evict(beer);
+        beerCaches.putLoaded(generation, beer);
+
+        assertThat(beerCaches.getBeerCache().getIfPresent(1)).isNull();
+        assertThat(beerCaches.getBeerUpcCache().getIfPresent("0631234200036")).isNull();
+
+        beerCaches.putLoaded(beerCaches.generation(), beer);
+        assertThat(beerCaches.getBeerCache().getIfPresent(1)).isEqualTo(beer);
+    }
+}
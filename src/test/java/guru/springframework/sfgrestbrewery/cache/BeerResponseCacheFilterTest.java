@@ -0,0 +1,104 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerResponseCacheFilterTest {
+
+    static final BeerDto BEER_1 = BeerDto.builder().id(1).upc("0631234200036").build();
+
+    BeerCaches beerCaches = new BeerCaches(100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1));
+    BeerResponseCacheFilter filter = new BeerResponseCacheFilter(beerCaches, DataSize.ofMegabytes(1), DataSize.ofKilobytes(1),
+            Duration.ofMinutes(1));
+    AtomicInteger served = new AtomicInteger();
+
+    WebFilterChain chain = exchange -> {
+        served.incrementAndGet();
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().setETag("\"1\"");
+        return response.writeWith(Mono.fromSupplier(() ->
+                response.bufferFactory().wrap("{\"id\":1}".getBytes(StandardCharsets.UTF_8))));
+    };
+
+    @Test
+    void secondReadIsServedFromTheCache() {
+        get("/api/v1/beer/1");
+        MockServerWebExchange hit = get("/api/v1/beer/1");
+
+        assertThat(served).hasValue(1);
+        assertThat(hit.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(hit.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":1}");
+        assertThat(hit.getResponse().getHeaders().getETag()).isEqualTo("\"1\"");
+    }
+
+    @Test
+    void inventoryReadsAreNeverCached() {
+        get("/api/v1/beer/1?showInventoryOnHand=1");
+        get("/api/v1/beer/1?showInventoryOnHand=1");
+        get("/api/v1/beer/1?showInventoryOnHand=yes");
+
+        assertThat(served).hasValue(3);
+    }
+
+    @Test
+    void matchingETagOnAHitIsNotModified() {
+        get("/api/v1/beer/1");
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/beer/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1\""));
+        filter.filter(exchange, chain).block();
+
+        assertThat(served).hasValue(1);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void writeEvictsTheBeerAndListsOnly() {
+        get("/api/v1/beer/1");
+        get("/api/v2/beerUpc/0631234200036");
+        get("/api/v1/beer");
+        get("/api/v1/beer/2");
+
+        beerCaches.evict(BEER_1);
+        get("/api/v1/beer/1");
+        get("/api/v2/beerUpc/0631234200036");
+        get("/api/v1/beer");
+        get("/api/v1/beer/2");
+
+        assertThat(served).hasValue(7);
+    }
+
+    @Test
+    void responseProducedAcrossAWriteIsNotStored() {
+        WebFilterChain writeWhileServing = exchange -> {
+            beerCaches.evict(BEER_1);
+            return chain.filter(exchange);
+        };
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/beer/1")), writeWhileServing).block();
+
+        get("/api/v1/beer/1");
+
+        assertThat(served).hasValue(2);
+    }
+
+    private MockServerWebExchange get(String uri) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+}
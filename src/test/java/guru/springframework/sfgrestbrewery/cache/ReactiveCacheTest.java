@@ -0,0 +1,75 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveCacheTest {
+
+    ReactiveCache<Integer, String> cache;
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReactiveCache<>("test", 100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void cachesResolvedValue() {
+        assertThat(cache.get(1, this::load).block()).isEqualTo("beer-1");
+        assertThat(cache.get(1, this::load).block()).isEqualTo("beer-1");
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotCacheEmptyResult() {
+        assertThat(cache.get(1, key -> countedEmpty()).block()).isNull();
+        assertThat(cache.get(1, key -> countedEmpty()).block()).isNull();
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void sharesInFlightLoad() {
+        Sinks.One<String> pending = Sinks.one();
+
+        Mono<String> first = cache.get(1, key -> pending.asMono().doOnSubscribe(s -> loads.incrementAndGet()));
+        Mono<String> second = cache.get(1, key -> pending.asMono().doOnSubscribe(s -> loads.incrementAndGet()));
+
+        first.subscribe();
+        second.subscribe();
+        pending.tryEmitValue("shared");
+
+        assertThat(first.block()).isEqualTo("shared");
+        assertThat(second.block()).isEqualTo("shared");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void evictForcesReload() {
+        cache.get(1, this::load).block();
+        cache.evict(1);
+        cache.get(1, this::load).block();
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private Mono<String> load(Integer key) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return "beer-" + key;
+        });
+    }
+
+    private Mono<String> countedEmpty() {
+        return Mono.<String>empty().doOnSubscribe(s -> loads.incrementAndGet());
+    }
+}
@@ -0,0 +1,59 @@
+package guru.springframework.sfgrestbrewery.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentCallsShareOneUpstreamCall() {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", 100);
+        Sinks.One<String> pending = Sinks.one();
+        AtomicReference<String> first = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+
+        singleFlight.execute(1, key -> pending.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe(first::set);
+        singleFlight.execute(1, key -> pending.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe(second::set);
+        pending.tryEmitValue("beer");
+
+        assertThat(first.get()).isEqualTo("beer");
+        assertThat(second.get()).isEqualTo("beer");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", 100);
+
+        singleFlight.execute(1, this::call).block();
+        singleFlight.execute(1, this::call).block();
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void bypassesWhenFull() {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", 0);
+        Sinks.One<String> pending = Sinks.one();
+
+        singleFlight.execute(1, key -> pending.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe();
+        singleFlight.execute(1, key -> pending.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe();
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    private Mono<String> call(Integer key) {
+        return Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return "beer-" + key;
+        });
+    }
+}
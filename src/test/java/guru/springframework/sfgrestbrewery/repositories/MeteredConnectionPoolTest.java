@@ -0,0 +1,45 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MeteredConnectionPoolTest {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MeteredConnectionPool pool = new MeteredConnectionPool(new ConnectionPool(
+            ConnectionPoolConfiguration.builder(ConnectionFactories.get("r2dbc:h2:mem:///pool-test"))
+                    .initialSize(2)
+                    .maxSize(2)
+                    .build()), "test");
+
+    @BeforeEach
+    void setUp() {
+        pool.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.dispose();
+    }
+
+    @Test
+    void warmupOpensInitialConnectionsAndAcquiresAreTimed() {
+        assertThat(pool.warmup().block()).isEqualTo(2);
+        assertThat(registry.get("beer.db.pool.idle").tag("pool", "test").gauge().value()).isEqualTo(2);
+
+        Connection connection = pool.create().block();
+
+        assertThat(registry.get("beer.db.pool.acquire").tags("pool", "test", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("beer.db.pool.acquired").tag("pool", "test").gauge().value()).isEqualTo(1);
+        Mono.from(connection.close()).block();
+    }
+}
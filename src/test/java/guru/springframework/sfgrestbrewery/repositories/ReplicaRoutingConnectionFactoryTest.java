@@ -0,0 +1,59 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicaRoutingConnectionFactoryTest {
+
+    ReplicaRoutingConnectionFactory routing;
+
+    @BeforeEach
+    void setUp() {
+        MeteredConnectionPool primary = pool("primary");
+        MeteredConnectionPool replica = pool("replica");
+        label(primary, "primary");
+        label(replica, "replica");
+
+        routing = new ReplicaRoutingConnectionFactory(primary, List.of(replica), Duration.ofMinutes(1), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        routing.dispose();
+    }
+
+    @Test
+    void markedReadsGoToTheReplicaAndEverythingElseToThePrimary() {
+        DatabaseClient databaseClient = DatabaseClient.create(routing);
+        Mono<String> whoAmI = databaseClient.sql("SELECT name FROM whoami").map(row -> row.get(0, String.class)).one();
+
+        assertThat(ReplicaRoutingConnectionFactory.onReplica(whoAmI).block()).isEqualTo("replica");
+        assertThat(whoAmI.block()).isEqualTo("primary");
+    }
+
+    private MeteredConnectionPool pool(String name) {
+        return new MeteredConnectionPool(new ConnectionPool(
+                ConnectionPoolConfiguration.builder(ConnectionFactories.get("r2dbc:h2:mem:///routing-" + name))
+                        .initialSize(1)
+                        .maxSize(2)
+                        .build()), name);
+    }
+
+    private static void label(MeteredConnectionPool pool, String name) {
+        DatabaseClient databaseClient = DatabaseClient.create(pool);
+        databaseClient.sql("CREATE TABLE whoami (name VARCHAR(20))").then()
+                .then(databaseClient.sql("INSERT INTO whoami VALUES ('" + name + "')").then())
+                .block();
+    }
+}
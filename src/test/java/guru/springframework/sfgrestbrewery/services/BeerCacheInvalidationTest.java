@@ -0,0 +1,128 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import guru.springframework.sfgrestbrewery.cache.BeerCaches;
+import guru.springframework.sfgrestbrewery.cache.BeerCountCacheKey;
+import guru.springframework.sfgrestbrewery.cache.BeerListCacheKey;
+import guru.springframework.sfgrestbrewery.cache.ReactiveCache;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.r2dbc.url=r2dbc:h2:mem:///cache-invalidation-test?options=DB_CLOSE_DELAY=-1")
+class BeerCacheInvalidationTest {
+
+    static final PageRequest FIRST_PAGE = PageRequest.of(0, 25);
+
+    @Autowired
+    BeerService beerService;
+
+    @Autowired
+    BeerCaches beerCaches;
+
+    @Test
+    void saveEvictsTheListsAndCountsItMatches() {
+        listStyle(null);
+        listStyle(BeerStyleEnum.LAGER);
+        listStyle(BeerStyleEnum.PILSNER);
+
+        beerService.saveNewBeer(BeerDto.builder().beerName("Cache Lager").beerStyle("LAGER")
+                .upc("0000000000017").price(new BigDecimal("4.99")).build()).block();
+
+        assertThat(listCached(null)).isFalse();
+        assertThat(countCached(null)).isFalse();
+        assertThat(listCached(BeerStyleEnum.LAGER)).isFalse();
+        assertThat(countCached(BeerStyleEnum.LAGER)).isFalse();
+        assertThat(listCached(BeerStyleEnum.PILSNER)).isTrue();
+        assertThat(countCached(BeerStyleEnum.PILSNER)).isTrue();
+    }
+
+    @Test
+    void updateEvictsTheBeerItsOldAndNewUpcAndListsAndCountsOfBothStates() {
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_2_UPC).block();
+        BeerDto unrelated = beerService.getByUpc(BeerLoader.BEER_4_UPC).block();
+        beerService.getById(beer.getId(), false).block();
+        beerService.getById(unrelated.getId(), false).block();
+        listStyle(BeerStyleEnum.PALE_ALE);
+        listStyle(BeerStyleEnum.WHEAT);
+        listStyle(BeerStyleEnum.STOUT);
+
+        beerService.updateBeer(beer.getId(), BeerDto.builder().beerName(beer.getBeerName()).beerStyle("WHEAT")
+                .upc("0000000000024").price(beer.getPrice()).build()).block();
+
+        assertThat(cached(beerCaches.getBeerCache(), beer.getId())).isFalse();
+        assertThat(cached(beerCaches.getBeerUpcCache(), BeerLoader.BEER_2_UPC)).isFalse();
+        assertThat(listCached(BeerStyleEnum.PALE_ALE)).isFalse();
+        assertThat(countCached(BeerStyleEnum.PALE_ALE)).isFalse();
+        assertThat(listCached(BeerStyleEnum.WHEAT)).isFalse();
+        assertThat(countCached(BeerStyleEnum.WHEAT)).isFalse();
+
+        assertThat(cached(beerCaches.getBeerCache(), unrelated.getId())).isTrue();
+        assertThat(cached(beerCaches.getBeerUpcCache(), BeerLoader.BEER_4_UPC)).isTrue();
+        assertThat(listCached(BeerStyleEnum.STOUT)).isTrue();
+        assertThat(countCached(BeerStyleEnum.STOUT)).isTrue();
+    }
+
+    @Test
+    void deleteEvictsTheBeerItsUpcAndMatchingListsAndCounts() {
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_6_UPC).block();
+        beerService.getById(beer.getId(), false).block();
+        listStyle(BeerStyleEnum.IPA);
+        listStyle(BeerStyleEnum.PORTER);
+
+        beerService.reactiveDeleteBeerById(beer.getId()).block();
+
+        assertThat(cached(beerCaches.getBeerCache(), beer.getId())).isFalse();
+        assertThat(cached(beerCaches.getBeerUpcCache(), BeerLoader.BEER_6_UPC)).isFalse();
+        assertThat(listCached(BeerStyleEnum.IPA)).isFalse();
+        assertThat(countCached(BeerStyleEnum.IPA)).isFalse();
+        assertThat(listCached(BeerStyleEnum.PORTER)).isTrue();
+        assertThat(countCached(BeerStyleEnum.PORTER)).isTrue();
+    }
+
+    @Test
+    void writeOfABeerWithoutACachedPreviousStateDropsEveryListAndCount() {
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_5_UPC).block();
+        beerCaches.getBeerCache().evict(beer.getId());
+        listStyle(BeerStyleEnum.SAISON);
+
+        beerService.patchBeer(beer.getId(), BeerDto.builder().price(new BigDecimal("5.49")).build()).block();
+
+        assertThat(cached(beerCaches.getBeerUpcCache(), BeerLoader.BEER_5_UPC)).isFalse();
+        assertThat(listCached(BeerStyleEnum.SAISON)).isFalse();
+        assertThat(countCached(BeerStyleEnum.SAISON)).isFalse();
+    }
+
+    private void listStyle(BeerStyleEnum beerStyle) {
+        beerService.listBeers(null, beerStyle, FIRST_PAGE, false).block();
+    }
+
+    private boolean listCached(BeerStyleEnum beerStyle) {
+        return cached(beerCaches.getBeerListCache(), BeerListCacheKey.of(null, beerStyle, FIRST_PAGE));
+    }
+
+    private boolean countCached(BeerStyleEnum beerStyle) {
+        return cached(beerCaches.getBeerCountCache(), BeerCountCacheKey.of(null, beerStyle));
+    }
+
+    /**
+     * Probes without populating: an empty load is not cached.
+     */
+    private static <K, V> boolean cached(ReactiveCache<K, V> cache, K key) {
+        AtomicBoolean loaded = new AtomicBoolean();
+        cache.get(key, k -> {
+            loaded.set(true);
+            return Mono.empty();
+        }).block();
+        return !loaded.get();
+    }
+}
@@ -0,0 +1,56 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///catalog-snapshot-test?options=DB_CLOSE_DELAY=-1",
+        "sfg.brewery.catalog-snapshot.enabled=true",
+        "sfg.brewery.catalog-snapshot.reload-interval=1h"})
+class BeerCatalogSnapshotTest {
+
+    @Autowired
+    BeerService beerService;
+
+    @Autowired
+    BeerCatalogSnapshot beerCatalogSnapshot;
+
+    @BeforeEach
+    void setUp() {
+        beerCatalogSnapshot.refresh().block();
+    }
+
+    @Test
+    void listsAndLookupsAreServedFromTheSnapshot() {
+        assertThat(beerCatalogSnapshot.servesLists()).isTrue();
+
+        BeerPagedList lagers = beerService.listBeers(null, BeerStyleEnum.LAGER, PageRequest.of(0, 100), false).block();
+        assertThat(lagers.getContent()).isNotEmpty().allMatch(beer -> beer.getBeerStyle().equals("LAGER"));
+        assertThat(lagers.getTotalElements()).isEqualTo(beerCatalogSnapshot.matching(null, BeerStyleEnum.LAGER).size());
+
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_1_UPC).block();
+        assertThat(beerCatalogSnapshot.servesId(beer.getId())).isTrue();
+        assertThat(beerService.getById(beer.getId(), false).block().getUpc()).isEqualTo(BeerLoader.BEER_1_UPC);
+    }
+
+    @Test
+    void writtenBeerIsReadFromTheTableUntilTheNextRefresh() {
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_2_UPC).block();
+
+        beerService.patchBeer(beer.getId(), BeerDto.builder().beerName("Snapshot Pils").build()).block();
+        assertThat(beerService.getById(beer.getId(), false).block().getBeerName()).isEqualTo("Snapshot Pils");
+
+        beerCatalogSnapshot.refresh().block();
+        assertThat(beerCatalogSnapshot.servesId(beer.getId())).isTrue();
+        assertThat(beerCatalogSnapshot.byId(beer.getId()).getBeerName()).isEqualTo("Snapshot Pils");
+    }
+}
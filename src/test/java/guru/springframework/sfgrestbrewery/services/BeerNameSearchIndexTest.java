@@ -0,0 +1,57 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerNameSearchIndexTest {
+
+    BeerNameSearchIndex index = new BeerNameSearchIndex(null, null, null, 500);
+
+    @BeforeEach
+    void setUp() {
+        index.index(1, "Mango Bobs", "0631234200036");
+        index.index(2, "Galaxy Cat", "0631234300019");
+        index.index(3, "Pinball Porter", "0083783375213");
+        index.index(4, "Mango", "9122089364369");
+    }
+
+    @Test
+    void prefixMatchesRankBeforeSubstringMatches() {
+        assertThat(index.search("mango").getIds()).containsExactly(4, 1);
+        assertThat(index.search("an").getIds()).isEmpty();
+        assertThat(index.search("ANGO").getIds()).containsExactly(4, 1);
+        assertThat(index.search("a").getIds()).isEmpty();
+        assertThat(index.search("ball").getIds()).containsExactly(3);
+    }
+
+    @Test
+    void upcPrefixMatches() {
+        assertThat(index.search("063123").getIds()).containsExactly(1, 2);
+    }
+
+    @Test
+    void updatesAndDeletesAreSeenAtOnce() {
+        index.index(3, "Pinball Pils", null);
+        index.remove(4);
+
+        assertThat(index.search("porter").getIds()).isEmpty();
+        assertThat(index.search("pils").getIds()).containsExactly(3);
+        assertThat(index.search("0083").getIds()).containsExactly(3);
+        assertThat(index.search("mango").getIds()).containsExactly(1);
+    }
+
+    @Test
+    void totalCountsMatchesPastTheCap() {
+        BeerNameSearchIndex capped = new BeerNameSearchIndex(null, null, null, 2);
+        capped.index(1, "Mango Bobs", "0631234200036");
+        capped.index(2, "Mango", "9122089364369");
+        capped.index(3, "Dry Mango Ale", null);
+        capped.index(4, "Galaxy Cat", "mango");
+
+        BeerNameSearchIndex.Matches matches = capped.search("mango");
+        assertThat(matches.getIds()).containsExactly(2, 1);
+        assertThat(matches.getTotal()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,40 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BeerQueryMetricsTest {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    BeerQueryMetrics beerQueryMetrics = new BeerQueryMetrics(false);
+
+    @BeforeEach
+    void setUp() {
+        beerQueryMetrics.bindTo(registry);
+    }
+
+    @Test
+    void timesEachSubscriptionByQueryAndOutcome() {
+        Mono<Integer> query = beerQueryMetrics.timed("find.id", Mono.just(1));
+        query.block();
+        query.block();
+        assertThatThrownBy(() -> beerQueryMetrics.timed("find.id", Mono.error(new IllegalStateException())).block())
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.get("beer.query").tags("query", "find.id", "outcome", "success").timer().count()).isEqualTo(2);
+        assertThat(registry.get("beer.query").tags("query", "find.id", "outcome", "error").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledFluxIsTaggedCancelled() {
+        beerQueryMetrics.timed("stream", Flux.range(1, 100)).take(3).blockLast();
+
+        assertThat(registry.get("beer.query").tags("query", "stream", "outcome", "cancelled").timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,111 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerReservation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class BeerReservationLedgerTest {
+
+    BeerReadCoalescer beerReadCoalescer = mock(BeerReadCoalescer.class);
+    BeerInventoryAccumulator beerInventoryAccumulator = mock(BeerInventoryAccumulator.class);
+    AtomicLong pendingAdjustments = new AtomicLong();
+    BeerReservationLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        given(beerReadCoalescer.findByIdOnPrimary(1)).willReturn(Mono.just(Beer.builder().id(1).quantityOnHand(100).build()));
+        given(beerReadCoalescer.findByIdOnPrimary(2)).willReturn(Mono.empty());
+        given(beerInventoryAccumulator.onHand(any(), any()))
+                .willAnswer(invocation -> invocation.<Mono<Integer>>getArgument(1).map(onHand -> onHand + pendingAdjustments.get()));
+        ledger = new BeerReservationLedger(beerReadCoalescer, beerInventoryAccumulator, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.shutdown();
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() {
+        Long reserved = Flux.range(0, 1000)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> ledger.reserve(1, 1).onErrorResume(InsufficientInventoryException.class, e -> Mono.empty()))
+                .sequential()
+                .count()
+                .block();
+
+        assertThat(reserved).isEqualTo(100);
+    }
+
+    @Test
+    void releaseReturnsStock() {
+        BeerReservation reservation = ledger.reserve(1, 100).block();
+        ledger.release(reservation.getId()).block();
+
+        assertThat(ledger.reserve(1, 100).block()).isNotNull();
+    }
+
+    @Test
+    void commitPersistsDecrementAndKeepsStockTaken() {
+        BeerReservation reservation = ledger.reserve(1, 60).block();
+        ledger.commit(reservation.getId()).block();
+
+        verify(beerInventoryAccumulator).adjust(1, -60);
+        assertThatThrownBy(() -> ledger.reserve(1, 41).block()).isInstanceOf(InsufficientInventoryException.class);
+        assertThatThrownBy(() -> ledger.release(reservation.getId()).block()).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void expiredReservationIsReturned() {
+        ledger.shutdown();
+        ledger = new BeerReservationLedger(beerReadCoalescer, beerInventoryAccumulator, Duration.ZERO, Duration.ofMinutes(1));
+        ledger.reserve(1, 100).block();
+        ledger.expire();
+
+        assertThat(ledger.reserve(1, 100).block()).isNotNull();
+    }
+
+    @Test
+    void releaseAndAdjustmentWhileLoadingAreNotCountedTwice() {
+        Beer beer = Beer.builder().id(1).quantityOnHand(100).build();
+        Sinks.One<Beer> reloading = Sinks.one();
+        given(beerReadCoalescer.findByIdOnPrimary(1)).willReturn(Mono.just(beer), reloading.asMono(), Mono.just(beer));
+
+        BeerReservation reservation = ledger.reserve(1, 4).block();
+        ledger.forget(1);
+        CompletableFuture<BeerReservation> everything = ledger.reserve(1, 105).toFuture();
+
+        ledger.release(reservation.getId()).block();
+        pendingAdjustments.set(5);
+        ledger.adjust(1, 5);
+        reloading.tryEmitValue(beer);
+
+        assertThat(everything.join()).isNotNull();
+        assertThatThrownBy(() -> ledger.reserve(1, 1).block()).isInstanceOf(InsufficientInventoryException.class);
+    }
+
+    @Test
+    void unknownBeer() {
+        assertThatThrownBy(() -> ledger.reserve(2, 1).block()).isInstanceOf(NotFoundException.class);
+    }
+}
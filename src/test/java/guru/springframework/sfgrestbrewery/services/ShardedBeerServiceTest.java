@@ -0,0 +1,79 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.data.relational.core.query.Query.empty;
+
+@SpringBootTest(properties = "sfg.brewery.sharding.shards="
+        + "r2dbc:h2:mem:///shard-test-0?options=DB_CLOSE_DELAY=-1,"
+        + "r2dbc:h2:mem:///shard-test-1?options=DB_CLOSE_DELAY=-1,"
+        + "r2dbc:h2:mem:///shard-test-2?options=DB_CLOSE_DELAY=-1")
+class ShardedBeerServiceTest {
+
+    @Autowired
+    BeerService beerService;
+
+    @Autowired
+    BeerShards beerShards;
+
+    @Autowired
+    R2dbcEntityTemplate template;
+
+    @Test
+    void beersAreSpreadOverTheShardsAndFoundByIdAndUpc() {
+        List<Long> perShard = IntStream.range(0, 3)
+                .mapToObj(shard -> beerShards.on(shard, template.count(empty(), Beer.class)).block())
+                .collect(toList());
+        assertThat(perShard).allMatch(count -> count > 0);
+        assertThat(perShard.stream().mapToLong(Long::longValue).sum()).isEqualTo(30);
+
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_1_UPC).block();
+        assertThat(beerShards.shardOf(beer.getId())).isEqualTo(beerShards.placementOf(BeerLoader.BEER_1_UPC));
+        assertThat(beerService.getById(beer.getId(), false).block().getUpc()).isEqualTo(BeerLoader.BEER_1_UPC);
+    }
+
+    @Test
+    void listingMergesTheShardsInIdOrder() {
+        BeerPagedList first = beerService.listBeers(null, null, PageRequest.of(0, 10), false).block();
+        BeerPagedList second = beerService.listBeers(null, null, PageRequest.of(1, 10), false).block();
+
+        List<Integer> ids = new ArrayList<>();
+        first.getContent().forEach(beer -> ids.add(beer.getId()));
+        second.getContent().forEach(beer -> ids.add(beer.getId()));
+
+        assertThat(first.getTotalElements()).isEqualTo(30);
+        assertThat(ids).hasSize(20).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void upcTakenOnAnotherShardIsRejected() {
+        BeerDto beer = beerService.getByUpc(BeerLoader.BEER_1_UPC).block();
+        BeerDto other = beerService.listBeers(null, null, PageRequest.of(0, 30), false).block().getContent().stream()
+                .filter(candidate -> beerShards.shardOf(candidate.getId()) != beerShards.shardOf(beer.getId()))
+                .findFirst()
+                .orElseThrow();
+
+        assertThatThrownBy(() -> beerService.patchBeer(other.getId(), BeerDto.builder().upc(BeerLoader.BEER_1_UPC).build()).block())
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> beerService.saveNewBeer(BeerDto.builder().beerName("Twin").beerStyle("ALE")
+                .upc(other.getUpc()).price(beer.getPrice()).build()).block())
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(beerService.getById(other.getId(), false).block().getUpc()).isEqualTo(other.getUpc());
+    }
+}
@@ -2,6 +2,8 @@ package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursor;
+import guru.springframework.sfgrestbrewery.web.model.BeerCursorPage;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import lombok.Getter;
@@ -10,18 +12,25 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.when;
 
@@ -59,6 +68,33 @@ class BeerControllerTest {
                 .expectBody(BeerPagedList.class);
     }
 
+    @Test
+    void testListAfterCursor() {
+        BeerCursorPage cursorPage = BeerCursorPage.builder()
+                .content(Collections.singletonList(validBeer))
+                .size(1)
+                .nextCursor(BeerCursor.encode(11))
+                .build();
+        given(beerService.listBeersAfter(any(), any(), eq(10), eq(1), anyBoolean())).willReturn(Mono.just(cursorPage));
+
+        testClient.get()
+                .uri("/api/v1/beer?pageSize=1&after=" + BeerCursor.encode(10))
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BeerCursorPage.class)
+                .value(BeerCursorPage::getNextCursor, equalTo(BeerCursor.encode(11)));
+    }
+
+    @Test
+    void testListAfterInvalidCursor() {
+        testClient.get()
+                .uri("/api/v1/beer?after=not-a-cursor")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void getBeerByUpc() {
         given(beerService.getByUpc(any())).willReturn(Mono.just(validBeer));
@@ -85,4 +121,136 @@ class BeerControllerTest {
                 .value(BeerDto::getBeerName, equalTo(validBeer.getBeerName()));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void getBeerByIdNotModified() {
+        BeerDto beer = BeerDto.builder().id(1).version(2L).beerName("Test Beer").build();
+        given(beerService.getById(any(), any())).willReturn(Mono.just(beer));
+
+        testClient.get()
+                .uri("/api/v1/beer/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"1-2\"");
+
+        testClient.get()
+                .uri("/api/v1/beer/1")
+                .header("If-None-Match", "\"1-2\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void saveNewBeer() {
+        BeerDto savedBeer = BeerDto.builder().id(42).beerName("Test Beer").beerStyle("PALE_ALE").build();
+        given(beerService.saveNewBeer(any(BeerDto.class))).willReturn(Mono.just(savedBeer));
+
+        testClient.post()
+                .uri("/api/v1/beer")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().value("Location", location -> assertThat(location).endsWith("/api/v1/beer/42"));
+    }
+
+    @Test
+    void updateBeer() {
+        BeerDto savedBeer = BeerDto.builder().id(1).beerName("Test Beer").beerStyle("PALE_ALE").build();
+        given(beerService.updateBeer(any(), any())).willReturn(Mono.just(savedBeer));
+
+        testClient.put()
+                .uri("/api/v1/beer/1")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    void updateBeerNotFound() {
+        given(beerService.updateBeer(any(), any())).willReturn(Mono.just(BeerDto.builder().build()));
+
+        testClient.put()
+                .uri("/api/v1/beer/1")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void updateBeerIfMatchReturnsNewETag() {
+        given(beerService.updateBeer(any(), any())).willReturn(Mono.just(BeerDto.builder().id(1).version(4L).build()));
+
+        testClient.put()
+                .uri("/api/v1/beer/1")
+                .header("If-Match", "\"1-3\"")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isNoContent()
+                .expectHeader().valueEquals("ETag", "\"1-4\"");
+    }
+
+    @Test
+    void updateBeerIfMatchConflict() {
+        given(beerService.updateBeer(any(), any())).willReturn(Mono.error(new OptimisticLockingFailureException("stale")));
+
+        testClient.put()
+                .uri("/api/v1/beer/1")
+                .header("If-Match", "\"1-3\"")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    void updateBeerVersionConflict() {
+        given(beerService.updateBeer(any(), any())).willReturn(Mono.error(new OptimisticLockingFailureException("stale")));
+        validBeer.setVersion(3L);
+
+        testClient.put()
+                .uri("/api/v1/beer/1")
+                .body(BodyInserters.fromValue(validBeer))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void patchBeer() {
+        given(beerService.patchBeer(any(), any())).willReturn(Mono.just(BeerDto.builder().id(1).build()));
+
+        testClient.patch()
+                .uri("/api/v1/beer/1")
+                .body(BodyInserters.fromValue(BeerDto.builder().price(new BigDecimal("4.99")).build()))
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    void patchBeerInvalidStyle() {
+        testClient.patch()
+                .uri("/api/v1/beer/1")
+                .body(BodyInserters.fromValue(BeerDto.builder().beerStyle("NOT_A_STYLE").build()))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void deleteBeer() {
+        given(beerService.reactiveDeleteBeerById(any())).willReturn(Mono.empty());
+
+        testClient.delete()
+                .uri("/api/v1/beer/1")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void deleteBeerNotFound() {
+        given(beerService.reactiveDeleteBeerById(any())).willReturn(Mono.error(new NotFoundException()));
+
+        testClient.delete()
+                .uri("/api/v1/beer/1")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
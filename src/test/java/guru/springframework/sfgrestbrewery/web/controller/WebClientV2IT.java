@@ -1,7 +1,11 @@
 package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.web.functional.BeerRouterConfig;
+import guru.springframework.sfgrestbrewery.web.model.BeerBulkResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerInventoryAdjustment;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupRequest;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,12 +17,14 @@ import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -126,6 +132,70 @@ public class WebClientV2IT {
         assertThat(countDownLatch.getCount()).isEqualTo(0);
     }
 
+    @Test
+    void adjustInventory() {
+        Mono<Integer> onHand = webClient.get().uri(BeerRouterConfig.BEER_V2_PATH + "/3?showInventoryOnHand=true")
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve().bodyToMono(BeerDto.class)
+                .map(BeerDto::getQuantityOnHand);
+        Integer before = onHand.block();
+
+        Flux.range(0, 4)
+                .flatMap(i -> webClient.post().uri(BeerRouterConfig.BEER_V2_PATH + "/3/inventory/adjust")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .body(BodyInserters.fromValue(BeerInventoryAdjustment.builder().delta(5).build()))
+                        .retrieve().toBodilessEntity())
+                .doOnNext(response -> assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED))
+                .blockLast();
+
+        assertThat(onHand.block()).isEqualTo(before + 20);
+    }
+
+    @Test
+    void lookupBeers() throws InterruptedException {
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+        BeerLookupRequest lookup = BeerLookupRequest.builder()
+                .ids(List.of(2, 18755))
+                .upcs(List.of("0631234200036"))
+                .build();
+
+        webClient.post().uri(BeerRouterConfig.BEER_V2_PATH + "/lookup")
+                .accept(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(lookup))
+                .retrieve().bodyToFlux(BeerLookupResult.class)
+                .collectList()
+                .subscribe(results -> {
+                    assertThat(results).hasSize(3);
+                    assertThat(results.get(0).isFound()).isTrue();
+                    assertThat(results.get(1).isFound()).isFalse();
+                    assertThat(results.get(2).getBeer().getUpc()).isEqualTo("0631234200036");
+
+                    countDownLatch.countDown();
+                });
+
+        countDownLatch.await(1000, TimeUnit.MILLISECONDS);
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void streamBeers() throws InterruptedException {
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+
+        webClient.get().uri(BeerRouterConfig.BEER_V2_PATH)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve().bodyToFlux(BeerDto.class)
+                .collectList()
+                .subscribe(beers -> {
+                    assertThat(beers).isNotEmpty();
+                    assertThat(beers.get(0).getBeerName()).isNotNull();
+
+                    countDownLatch.countDown();
+                });
+
+        countDownLatch.await(1000, TimeUnit.MILLISECONDS);
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+    }
+
     @Test
     void saveBeer() throws InterruptedException {
         CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -133,7 +203,7 @@ public class WebClientV2IT {
         BeerDto beerDto = BeerDto.builder()
                 .beerName("Estrella Damm")
                 .beerStyle(BeerStyleEnum.LAGER.name())
-                .upc("0631234211036")
+                .upc("0631234211037")
                 .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
                 .quantityOnHand(random.nextInt(5000))
                 .build();
@@ -184,6 +254,31 @@ public class WebClientV2IT {
 
     }
 
+    @Test
+    void saveBeersBulk() throws InterruptedException {
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+        Flux<BeerDto> beers = Flux.just(
+                BeerDto.builder().beerName("Bulk Lager").beerStyle(BeerStyleEnum.LAGER.name()).upc("0631234219001").build(),
+                BeerDto.builder().beerStyle(BeerStyleEnum.LAGER.name()).upc("0631234219002").build());
+
+        webClient.post().uri(BeerRouterConfig.BEER_V2_PATH + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(beers, BeerDto.class)
+                .retrieve().bodyToFlux(BeerBulkResult.class)
+                .collectList()
+                .subscribe(results -> {
+                    assertThat(results).hasSize(2);
+                    assertThat(results.get(0).getStatus()).isEqualTo(BeerBulkResult.Status.CREATED);
+                    assertThat(results.get(0).getId()).isNotNull();
+                    assertThat(results.get(1).getStatus()).isEqualTo(BeerBulkResult.Status.INVALID);
+
+                    countDownLatch.countDown();
+                });
+
+        countDownLatch.await(1000, TimeUnit.MILLISECONDS);
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+    }
+
     @Test
     void updateBeer() throws InterruptedException {
         CountDownLatch countDownLatch = new CountDownLatch(3);